@@ -0,0 +1,66 @@
+package suddenStop;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * The IndustryAggregates table of a run as a tab separated file, a row per
+ * tick and bucket. See TickAggregates
+ */
+class AggregatesFile implements Closeable {
+
+	private int simID;
+	private int run;
+	private String[] buckets;
+
+	private Writer out;
+	private StringBuilder line = new StringBuilder(512);
+
+	AggregatesFile(File runDir, int simID, int run, ModelParameters params)
+			throws IOException {
+
+		this.simID = simID;
+		this.run = run;
+		buckets = TickAggregates.bucketNames(params);
+
+		String[] stats = TickAggregates.statNames(params.firmColumns);
+		String[] names = new String[7 + stats.length];
+		names[0] = "Simulation";
+		names[1] = "RunNumber";
+		names[2] = "Tick";
+		names[3] = "Bucket";
+		names[4] = "Firms";
+		names[5] = "Births";
+		names[6] = "Exits";
+		System.arraycopy(stats, 0, names, 7, stats.length);
+
+		out = FileSink.open(new File(runDir, "IndustryAggregates.tsv"), names);
+
+	}
+
+	void write(TickRecord r) throws IOException {
+		TickAggregates a = r.aggregates;
+
+		for (int b = 0; b < a.buckets; b++) {
+			line.setLength(0);
+			line.append(simID).append('\t').append(run).append('\t').append(
+					r.tick).append('\t').append(buckets[b]).append('\t')
+					.append(a.firms[b]).append('\t').append(a.births[b])
+					.append('\t').append(a.exits[b]);
+			for (int c = 0; c < a.columns.length; c++) {
+				line.append('\t').append(a.sum[b * a.columns.length + c]);
+				line.append('\t').append(a.mean(b, c));
+				line.append('\t').append(a.variance(b, c));
+			}
+			line.append('\n');
+			out.append(line);
+		}
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
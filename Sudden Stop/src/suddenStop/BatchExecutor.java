@@ -0,0 +1,268 @@
+package suddenStop;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Makes the runs of a sweep at the same time on a fixed pool of threads.
+ * Runs share no state: each one has its own parameters, generator, supply
+ * manager and firm IDs, so the results don't depend on the number of
+ * threads.
+ * 
+ * Runs are the unit of work, so workerThreads should be left at 1 unless
+ * there are fewer runs than cores.
+ * 
+ * Runs that only differ in the magnitude or duration of the sudden stop are
+ * the same until it starts. With forking they share those ticks, which are
+ * saved to the output of each run.
+ */
+public class BatchExecutor {
+
+	/*
+	 * Summary of a finished run. Time of forked runs doesn't include the
+	 * shared ticks
+	 */
+	public static class Result {
+		public final int run;
+		public final ModelParameters params;
+		public final double ticks;
+		public final double firms;
+		public final double price;
+		public final long millis;
+		// Null unless the data was saved
+		public final WriterMetrics output;
+
+		Result(int run, Simulation sim, long millis) {
+			this.run = run;
+			params = sim.getParams();
+			ticks = sim.getTick();
+			firms = sim.getSupplyManager().getTotalFirms();
+			price = sim.getSupplyManager().getPrice();
+			this.millis = millis;
+			output = sim.getWriterMetrics();
+		}
+
+		public String toString() {
+			return "Run " + run + ": seed " + params.get("randomSeed")
+					+ ", ticks " + ticks + ", firms " + firms + ", price "
+					+ price + ", " + millis + " ms"
+					+ ((output != null) ? ", saved " + output : "");
+		}
+	}
+
+	/*
+	 * Parameters that only have an effect from the sudden stop on
+	 */
+	private static final String[] SHOCK_PARAMS = { "suddenStopMagnitude",
+			"suddenStopDuration" };
+
+	private int threads;
+	private boolean fork;
+	private File checkpoint = null;
+	private ScenarioAggregator aggregator = null;
+
+	public BatchExecutor(int threads) {
+		this(threads, false);
+	}
+
+	/*
+	 * When fork is true, runs that only differ in the shock simulate the
+	 * ticks before it once, and go on from a copy each
+	 */
+	public BatchExecutor(int threads, boolean fork) {
+		this.threads = threads;
+		this.fork = fork;
+	}
+
+	/*
+	 * Every run will start from the run saved in checkpoint, going on with
+	 * its own parameters. Runs restored save the ticks after the checkpoint
+	 */
+	public void startFrom(File checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/*
+	 * The market series of every run will be added to aggregator as soon as
+	 * the run finishes
+	 */
+	public void aggregateInto(ScenarioAggregator aggregator) {
+		this.aggregator = aggregator;
+	}
+
+	/*
+	 * Makes every run and returns their results in run order. Runs are
+	 * numbered from 1 as in Repast. Data is saved to sink unless it is null
+	 */
+	public List<Result> run(final List<Map<String, Object>> runs,
+			final OutputSink sink) {
+
+		if (fork && checkpoint != null)
+			throw new IllegalArgumentException(
+					"Restored runs can't be forked");
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Batch run");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+
+		List<Future<List<Result>>> futures = new ArrayList<Future<List<Result>>>();
+
+		// The simulations are built by the tasks, so only the running ones
+		// are in memory
+		for (final List<Integer> group : groups(runs)) {
+			futures.add(pool.submit(new Callable<List<Result>>() {
+				public List<Result> call() throws IOException {
+					if (group.size() == 1)
+						return runAlone(group.get(0), runs, sink);
+					else
+						return runForked(group, runs, sink);
+				}
+			}));
+		}
+
+		Result[] results = new Result[runs.size()];
+		try {
+			for (Future<List<Result>> f : futures)
+				for (Result r : f.get())
+					results[r.run - 1] = r;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return Arrays.asList(results);
+
+	}
+
+	private List<Result> runAlone(int i, List<Map<String, Object>> runs,
+			OutputSink sink) throws IOException {
+		long start = System.currentTimeMillis();
+
+		ModelParameters params = new ModelParameters(runs.get(i));
+
+		Simulation s;
+		if (checkpoint != null)
+			s = Checkpoint.restore(checkpoint, params, sink, i + 1);
+		else if (sink != null)
+			s = new Simulation(params, sink, i + 1);
+		else
+			s = new Simulation(params);
+		s.run();
+		aggregate(s);
+
+		return Collections.singletonList(new Result(i + 1, s, System
+				.currentTimeMillis()
+				- start));
+	}
+
+	/*
+	 * The ticks before the sudden stop are the same for every run of group,
+	 * so they are simulated once with the parameters of the first. With a
+	 * sink the output of every run is opened first, and those ticks are
+	 * written to each
+	 */
+	private List<Result> runForked(List<Integer> group,
+			List<Map<String, Object>> runs, OutputSink sink)
+			throws IOException {
+		List<Result> results = new ArrayList<Result>(group.size());
+
+		ModelParameters[] params = new ModelParameters[group.size()];
+		for (int j = 0; j < params.length; j++)
+			params[j] = new ModelParameters(runs.get(group.get(j)));
+
+		// Nothing to share when the sudden stop starts at the first tick
+		if (params[0].suddenStopStartTick <= 1) {
+			for (int i : group)
+				results.addAll(runAlone(i, runs, sink));
+			return results;
+		}
+
+		RunOutput[] outputs = null;
+		Simulation trunk;
+		if (sink != null) {
+			outputs = new RunOutput[params.length];
+			for (int j = 0; j < params.length; j++)
+				outputs[j] = sink.openRun(group.get(j) + 1, params[j]);
+			trunk = new Simulation(params[0], new SharedPrefixOutput(
+					outputs), group.get(0) + 1);
+		} else {
+			trunk = new Simulation(params[0]);
+		}
+
+		trunk.runUntil(params[0].suddenStopStartTick - 1);
+
+		// The shared ticks are written before the forks write theirs
+		trunk.end();
+
+		for (int j = 0; j < params.length; j++) {
+			long start = System.currentTimeMillis();
+
+			int run = group.get(j) + 1;
+			Simulation s = (outputs != null) ? trunk.fork(params[j],
+					outputs[j], run) : trunk.fork(params[j]);
+			s.run();
+			aggregate(s);
+
+			results.add(new Result(run, s, System.currentTimeMillis()
+					- start));
+		}
+
+		return results;
+	}
+
+	private void aggregate(Simulation s) throws IOException {
+		if (aggregator != null)
+			aggregator.add(s.getParams(), s.getSeries());
+	}
+
+	/*
+	 * Indexes of runs made together. Without forking each run is alone,
+	 * otherwise runs are grouped by every parameter but the shock ones
+	 */
+	private List<List<Integer>> groups(List<Map<String, Object>> runs) {
+		Map<Object, List<Integer>> groups = new LinkedHashMap<Object, List<Integer>>();
+
+		for (int i = 0; i < runs.size(); i++) {
+			Object key = i;
+			if (fork) {
+				Map<String, Object> prefix = new TreeMap<String, Object>(runs
+						.get(i));
+				for (String p : SHOCK_PARAMS)
+					prefix.remove(p);
+				key = prefix;
+			}
+
+			List<Integer> g = groups.get(key);
+			if (g == null) {
+				g = new ArrayList<Integer>();
+				groups.put(key, g);
+			}
+			g.add(i);
+		}
+
+		return new ArrayList<List<Integer>>(groups.values());
+	}
+
+}
@@ -0,0 +1,257 @@
+package suddenStop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/*
+ * Saves a run in a binary file between two steps, and restores it to go on
+ * exactly as it would have. The file holds the parameters of the run, the
+ * supply manager with its random generator, and both states of every firm.
+ * 
+ * Files of any other version are rejected. Version 2 writes the exit cause
+ * of each firm instead of whether it exits.
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x53534350; // SSCP
+	private static final int VERSION = 2;
+
+	// Parameters that have no effect before the sudden stop starts
+	private static final List<String> SHOCK_PARAMS = Arrays.asList(
+			"suddenStopStart", "suddenStopMagnitude", "suddenStopDuration");
+
+	// Tags of parameter values
+	private static final byte NULL = 0;
+	private static final byte INT = 1;
+	private static final byte LONG = 2;
+	private static final byte DOUBLE = 3;
+	private static final byte FLOAT = 4;
+	private static final byte BOOLEAN = 5;
+	private static final byte STRING = 6;
+
+	/*
+	 * The file is written next to f, synced to disk and then moved over f in
+	 * a single step, so a crash while saving leaves either the previous
+	 * checkpoint or the new one, complete
+	 */
+	public static void save(Simulation sim, File f) throws IOException {
+
+		File tmp = new File(f.getPath() + ".tmp");
+
+		FileOutputStream file = new FileOutputStream(tmp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				file));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeParameters(out, sim.getParams());
+			sim.getSupplyManager().writeTo(out);
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		Files.move(tmp.toPath(), f.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+	}
+
+	/*
+	 * Restores the run saved in f with its own parameters
+	 */
+	public static Simulation restore(File f) throws IOException {
+		return restore(f, null);
+	}
+
+	/*
+	 * Restores the run saved in f to go on with params, or with the saved
+	 * ones if params is null. They may only differ in the parameters that
+	 * haven't had any effect up to the saved tick, see checkParameters
+	 */
+	public static Simulation restore(File f, ModelParameters params)
+			throws IOException {
+
+		DataInputStream in = open(f);
+		try {
+			ModelParameters saved = new ModelParameters(readParameters(in));
+			if (params == null)
+				params = saved;
+
+			SupplyManager sm = new SupplyManager(params, in);
+			double tick = (sm.market != null) ? sm.market.tick : 0;
+			checkParameters(saved, params, tick);
+
+			return new Simulation(params, sm);
+		} finally {
+			in.close();
+		}
+
+	}
+
+	/*
+	 * As restore, saving the data of the ticks after the checkpoint to sink
+	 * as run number run, unless sink is null
+	 */
+	public static Simulation restore(File f, ModelParameters params,
+			OutputSink sink, int run) throws IOException {
+
+		Simulation s = restore(f, params);
+		if (sink != null)
+			s.saveTo(sink, run);
+		return s;
+
+	}
+
+	/*
+	 * Only the parameters that don't change the model, stopAt, and the
+	 * sudden stop if it hasn't started by tick in either run can differ
+	 */
+	private static void checkParameters(ModelParameters saved,
+			ModelParameters params, double tick) {
+
+		boolean shockStarted = tick >= Math.min(saved.suddenStopStartTick,
+				params.suddenStopStartTick);
+
+		Set<String> names = new TreeSet<String>(saved.names());
+		names.addAll(params.names());
+
+		for (String name : names) {
+			if (!ModelParameters.isModelParameter(name)
+					|| name.equals("stopAt")
+					|| (!shockStarted && SHOCK_PARAMS.contains(name)))
+				continue;
+
+			Object savedValue = saved.get(name);
+			Object value = params.get(name);
+			if (!ParameterSet.canonical(savedValue).equals(
+					ParameterSet.canonical(value)))
+				throw new IllegalArgumentException("Parameter " + name
+						+ " is " + value + " but the checkpoint has "
+						+ savedValue);
+		}
+
+	}
+
+	/*
+	 * Returns the parameters of the run saved in f
+	 */
+	public static Map<String, Object> readParameters(File f)
+			throws IOException {
+		DataInputStream in = open(f);
+		try {
+			return readParameters(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static DataInputStream open(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(f)));
+
+		if (in.readInt() != MAGIC) {
+			in.close();
+			throw new IOException(f + " is not a checkpoint");
+		}
+
+		int version = in.readInt();
+		if (version != VERSION) {
+			in.close();
+			throw new IOException(f + " has unknown checkpoint version "
+					+ version);
+		}
+
+		return in;
+	}
+
+	private static void writeParameters(DataOutputStream out,
+			ModelParameters params) throws IOException {
+
+		out.writeInt(params.names().size());
+
+		for (String name : params.names()) {
+			Object v = params.get(name);
+			out.writeUTF(name);
+
+			if (v == null) {
+				out.writeByte(NULL);
+			} else if (v instanceof Integer) {
+				out.writeByte(INT);
+				out.writeInt((Integer) v);
+			} else if (v instanceof Long) {
+				out.writeByte(LONG);
+				out.writeLong((Long) v);
+			} else if (v instanceof Double) {
+				out.writeByte(DOUBLE);
+				out.writeDouble((Double) v);
+			} else if (v instanceof Float) {
+				out.writeByte(FLOAT);
+				out.writeFloat((Float) v);
+			} else if (v instanceof Boolean) {
+				out.writeByte(BOOLEAN);
+				out.writeBoolean((Boolean) v);
+			} else {
+				out.writeByte(STRING);
+				out.writeUTF(v.toString());
+			}
+		}
+
+	}
+
+	private static Map<String, Object> readParameters(DataInputStream in)
+			throws IOException {
+
+		Map<String, Object> values = new TreeMap<String, Object>();
+
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			String name = in.readUTF();
+
+			switch (in.readByte()) {
+			case NULL:
+				values.put(name, null);
+				break;
+			case INT:
+				values.put(name, in.readInt());
+				break;
+			case LONG:
+				values.put(name, in.readLong());
+				break;
+			case DOUBLE:
+				values.put(name, in.readDouble());
+				break;
+			case FLOAT:
+				values.put(name, in.readFloat());
+				break;
+			case BOOLEAN:
+				values.put(name, in.readBoolean());
+				break;
+			case STRING:
+				values.put(name, in.readUTF());
+				break;
+			default:
+				throw new IOException("Unknown type of parameter " + name);
+			}
+		}
+
+		return values;
+
+	}
+
+}
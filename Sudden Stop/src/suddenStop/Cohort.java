@@ -220,7 +220,7 @@ public class Cohort {
 	}
 	
 	public String toString() {
-		return f.agentID;
+		return f.toString();
 	}
 
 }
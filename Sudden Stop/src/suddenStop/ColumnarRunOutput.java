@@ -0,0 +1,164 @@
+package suddenStop;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import suddenStop.ColumnarTableWriter.Type;
+
+/*
+ * The data tables of a run with MarketData and IndividualFirmsPerTick as
+ * columnar tables. Simulation and RunNumber are the same for every row of a
+ * run, so they are not stored in the columns. IndividualFirms and FirmExits,
+ * a row per firm, are tab separated files as in FileRunOutput, and so is
+ * IndustryAggregates when only aggregates are saved. With firmTrajectories
+ * the rows per tick of the firms are saved as a TrajectoryFile instead.
+ */
+public class ColumnarRunOutput implements RunOutput {
+
+	private int simID;
+	private int run;
+
+	private ColumnarTableWriter mktData;
+	private Writer firmsConstData;
+	private ColumnarTableWriter firmsPerTickData;
+	private TrajectoryFile trajectories = null;
+	private Writer firmExits;
+	private int perTickColumns;
+
+	private AggregatesFile aggregates = null;
+	private SketchFile sketches = null;
+
+	private List<Closeable> outputs = new ArrayList<Closeable>();
+
+	private StringBuilder line = new StringBuilder(256);
+
+	ColumnarRunOutput(File runDir, int simID, int run, ModelParameters params)
+			throws IOException {
+
+		this.simID = simID;
+		this.run = run;
+		FirmColumn[] columns = params.firmColumns;
+		perTickColumns = columns.length;
+
+		mktData = new ColumnarTableWriter(new File(runDir, "MarketData"),
+				new String[] { "Tick", "Price", "TotalQuantity" }, new Type[] {
+						Type.DOUBLE, Type.DOUBLE, Type.DOUBLE });
+		outputs.add(mktData);
+
+		if (params.sketchColumns.length > 0) {
+			sketches = new SketchFile(runDir, simID, run,
+					params.sketchColumns);
+			outputs.add(sketches);
+		}
+
+		if (params.aggregateOnly) {
+			aggregates = new AggregatesFile(runDir, simID, run, params);
+			outputs.add(aggregates);
+			return;
+		}
+
+		if (params.firmTrajectories) {
+			trajectories = new TrajectoryFile(runDir, columns);
+			outputs.add(trajectories);
+		} else {
+			String[] names = new String[2 + perTickColumns];
+			Type[] types = new Type[names.length];
+			names[0] = "Tick";
+			types[0] = Type.DOUBLE;
+			names[1] = "Firm";
+			types[1] = Type.LONG;
+			for (int c = 0; c < perTickColumns; c++) {
+				names[2 + c] = columns[c].columnName;
+				types[2 + c] = Type.DOUBLE;
+			}
+			firmsPerTickData = new ColumnarTableWriter(new File(runDir,
+					"IndividualFirmsPerTick"), names, types);
+			outputs.add(firmsPerTickData);
+		}
+
+		String[] constNames = new String[3 + TickRecord.CONST_COLUMNS];
+		constNames[0] = "Simulation";
+		constNames[1] = "RunNumber";
+		constNames[2] = "Firm";
+		System.arraycopy(TickRecord.CONST_NAMES, 0, constNames, 3,
+				TickRecord.CONST_COLUMNS);
+		firmsConstData = FileSink.open(
+				new File(runDir, "IndividualFirms.tsv"), constNames);
+		firmExits = FileSink.open(new File(runDir, "FirmExits.tsv"),
+				"Simulation", "RunNumber", "Tick", "Firm", "Cause");
+		outputs.add(firmsConstData);
+		outputs.add(firmExits);
+
+	}
+
+	public void writeTick(TickRecord r) throws IOException {
+
+		mktData.putDouble(0, r.tick);
+		mktData.putDouble(1, r.price);
+		mktData.putDouble(2, r.totalQuantity);
+
+		if (sketches != null)
+			sketches.write(r);
+
+		if (aggregates != null) {
+			aggregates.write(r);
+			return;
+		}
+
+		for (int i = 0; i < r.newFirms; i++) {
+			line.setLength(0);
+			line.append(simID).append('\t').append(run).append('\t').append(
+					r.newFirmIDs[i]);
+			int base = i * TickRecord.CONST_COLUMNS;
+			for (int c = 0; c < TickRecord.CONST_COLUMNS; c++)
+				line.append('\t').append(r.newFirmData[base + c]);
+			line.append('\n');
+			firmsConstData.append(line);
+		}
+
+		for (int i = 0; i < r.exits; i++) {
+			line.setLength(0);
+			line.append(simID).append('\t').append(run).append('\t').append(
+					r.tick).append('\t').append(r.exitFirmIDs[i]).append('\t')
+					.append(r.exitCauses[i]).append('\n');
+			firmExits.append(line);
+		}
+
+		if (trajectories != null) {
+			trajectories.write(r);
+			return;
+		}
+
+		// Column by column, so each column segment is written sequentially
+		for (int i = 0; i < r.firms; i++)
+			firmsPerTickData.putDouble(0, r.tick);
+		for (int i = 0; i < r.firms; i++)
+			firmsPerTickData.putLong(1, r.firmIDs[i]);
+		for (int c = 0; c < perTickColumns; c++) {
+			for (int i = 0; i < r.firms; i++)
+				firmsPerTickData.putDouble(2 + c, r.firmData[i
+						* perTickColumns + c]);
+		}
+
+	}
+
+	public void close() throws IOException {
+		IOException error = null;
+
+		for (Closeable c : outputs) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+
+		if (error != null)
+			throw error;
+	}
+
+}
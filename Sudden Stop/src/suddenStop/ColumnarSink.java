@@ -0,0 +1,22 @@
+package suddenStop;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Saves the tables as FileSink does, except MarketData and
+ * IndividualFirmsPerTick, which are written as columnar tables (see
+ * ColumnarTableWriter) to be scanned with ColumnarTable.
+ */
+public class ColumnarSink extends FileSink {
+
+	public ColumnarSink(String dir) {
+		super(dir);
+	}
+
+	protected RunOutput createRunOutput(File runDir, int run,
+			ModelParameters params) throws IOException {
+		return new ColumnarRunOutput(runDir, getSimID(), run, params);
+	}
+
+}
@@ -0,0 +1,126 @@
+package suddenStop;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import suddenStop.ColumnarTableWriter.Type;
+
+/*
+ * Reads a table written by ColumnarTableWriter. Columns are returned as
+ * buffers over the mapped column files, so scanning them copies nothing.
+ * 
+ * A column is mapped as a whole, so it can hold up to 2^28 values.
+ */
+public class ColumnarTable {
+
+	private File dir;
+	private long rows;
+	private Map<String, Type> columns = new LinkedHashMap<String, Type>();
+
+	private ColumnarTable(File dir) throws IOException {
+		this.dir = dir;
+
+		File meta = new File(dir, ColumnarTableWriter.META);
+		if (!meta.isFile())
+			throw new IOException(dir + " is not a complete columnar table");
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(meta), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] f = line.split("\t");
+				if (f[0].equals("rows"))
+					rows = Long.parseLong(f[1]);
+				else if (f[0].equals("column"))
+					columns.put(f[1], Type.valueOf(f[2]));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	public static ColumnarTable open(File dir) throws IOException {
+		return new ColumnarTable(dir);
+	}
+
+	/*
+	 * Opens table in every run directory of a simulation directory, in run
+	 * order
+	 */
+	public static List<ColumnarTable> openRuns(File simDir, String table)
+			throws IOException {
+		List<Integer> runs = new ArrayList<Integer>();
+
+		String[] names = simDir.list();
+		if (names != null) {
+			for (String n : names) {
+				if (n.startsWith("run-"))
+					runs.add(Integer.parseInt(n.substring(4)));
+			}
+		}
+		Collections.sort(runs);
+
+		List<ColumnarTable> tables = new ArrayList<ColumnarTable>(runs.size());
+		for (int r : runs)
+			tables.add(open(new File(new File(simDir, "run-" + r), table)));
+
+		return tables;
+	}
+
+	public long rows() {
+		return rows;
+	}
+
+	public List<String> columns() {
+		return new ArrayList<String>(columns.keySet());
+	}
+
+	public DoubleBuffer doubles(String column) throws IOException {
+		check(column, Type.DOUBLE);
+		return map(column).asDoubleBuffer();
+	}
+
+	public LongBuffer longs(String column) throws IOException {
+		check(column, Type.LONG);
+		return map(column).asLongBuffer();
+	}
+
+	private void check(String column, Type type) {
+		if (columns.get(column) != type)
+			throw new IllegalArgumentException(column + " is not a " + type
+					+ " column of " + dir);
+	}
+
+	/*
+	 * The mapping stays valid after the file is closed
+	 */
+	private ByteBuffer map(String column) throws IOException {
+		if (rows * 8 > Integer.MAX_VALUE)
+			throw new IOException(column + " is too large to be mapped");
+
+		RandomAccessFile f = new RandomAccessFile(new File(dir,
+				ColumnarTableWriter.fileName(column)), "r");
+		try {
+			return f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					rows * 8).order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			f.close();
+		}
+	}
+
+}
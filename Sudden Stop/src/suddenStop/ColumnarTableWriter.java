@@ -0,0 +1,206 @@
+package suddenStop;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Writes a table as a directory with one file per column, through memory
+ * mapped segments. Values are fixed width and little endian, so column files
+ * can be mapped as arrays by any reader. Every column must get one value per
+ * row.
+ * 
+ * The row count and the columns are written to table.meta on close, so a
+ * table without it is incomplete. Segments double in size as the column
+ * grows. Each segment is unmapped when the next one is mapped, so files can
+ * be trimmed to the rows written on close; where the platform can't unmap
+ * them, a warning names the untrimmed file.
+ */
+public class ColumnarTableWriter implements Closeable {
+
+	public enum Type {
+		DOUBLE, LONG
+	}
+
+	static final String META = "table.meta";
+
+	private static final int FIRST_SEGMENT = 1 << 15;
+	private static final int MAX_SEGMENT = 1 << 26;
+
+	// Unsafe.invokeCleaner from Java 9, null on Java 8
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+			Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+		} catch (Exception e) {
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private File dir;
+	private String[] names;
+	private Type[] types;
+	private Column[] columns;
+
+	public ColumnarTableWriter(File dir, String[] names, Type[] types)
+			throws IOException {
+
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+
+		this.dir = dir;
+		this.names = names;
+		this.types = types;
+
+		columns = new Column[names.length];
+		for (int i = 0; i < names.length; i++)
+			columns[i] = new Column(new File(dir, fileName(names[i])));
+
+	}
+
+	static String fileName(String column) {
+		return column + ".col";
+	}
+
+	public void putDouble(int column, double v) throws IOException {
+		columns[column].reserve().putDouble(v);
+	}
+
+	public void putLong(int column, long v) throws IOException {
+		columns[column].reserve().putLong(v);
+	}
+
+	/*
+	 * Rows written, i.e. values in the first column
+	 */
+	public long rows() {
+		return columns[0].written / 8;
+	}
+
+	public void close() throws IOException {
+
+		long rows = rows();
+
+		for (Column c : columns)
+			c.close();
+
+		Writer w = new OutputStreamWriter(new FileOutputStream(new File(dir,
+				META)), "UTF-8");
+		try {
+			w.write("rows\t" + rows + "\n");
+			for (int i = 0; i < names.length; i++)
+				w.write("column\t" + names[i] + "\t" + types[i] + "\n");
+		} finally {
+			w.close();
+		}
+
+	}
+
+	/*
+	 * Releases the mapping of a segment now instead of when it is collected,
+	 * through Unsafe.invokeCleaner or, on Java 8, the cleaner of the buffer.
+	 * The segment must not be used afterwards. Returns false if the platform
+	 * allows neither.
+	 */
+	static boolean unmap(MappedByteBuffer segment) {
+		try {
+			if (INVOKE_CLEANER != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, segment);
+			} else {
+				Method cleaner = segment.getClass().getMethod("cleaner");
+				cleaner.setAccessible(true);
+				Object c = cleaner.invoke(segment);
+				c.getClass().getMethod("clean").invoke(c);
+			}
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/*
+	 * A column file mapped one segment at a time
+	 */
+	private static class Column {
+
+		private File f;
+		private RandomAccessFile file;
+		private FileChannel channel;
+		private MappedByteBuffer segment = null;
+		private long mapped = 0;
+		private int segmentSize = FIRST_SEGMENT;
+		private long written = 0;
+		private boolean unmapped = true;
+
+		Column(File f) throws IOException {
+			this.f = f;
+			file = new RandomAccessFile(f, "rw");
+			file.setLength(0);
+			channel = file.getChannel();
+		}
+
+		/*
+		 * Returns the segment with room for one more value
+		 */
+		MappedByteBuffer reserve() throws IOException {
+			if (segment == null || !segment.hasRemaining()) {
+				release();
+				segment = channel.map(FileChannel.MapMode.READ_WRITE,
+						mapped, segmentSize);
+				segment.order(ByteOrder.LITTLE_ENDIAN);
+				mapped += segmentSize;
+				segmentSize = Math.min(2 * segmentSize, MAX_SEGMENT);
+			}
+
+			written += 8;
+			return segment;
+		}
+
+		private void release() {
+			if (segment != null)
+				unmapped &= unmap(segment);
+			segment = null;
+		}
+
+		void close() throws IOException {
+			if (segment != null)
+				segment.force();
+			release();
+
+			// A file still mapped can't be trimmed on some platforms, readers
+			// use the row count anyway
+			try {
+				channel.truncate(written);
+			} catch (IOException e) {
+				System.err.println("Warning: " + f + " could not be trimmed"
+						+ (unmapped ? "" : " as it is still mapped") + ": "
+						+ e.getMessage());
+			}
+
+			channel.close();
+			file.close();
+		}
+
+	}
+
+}
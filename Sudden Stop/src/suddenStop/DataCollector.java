@@ -0,0 +1,249 @@
+package suddenStop;
+
+import static repast.simphony.essentials.RepastEssentials.GetTickCount;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import repast.simphony.engine.schedule.ScheduledMethod;
+import static repast.simphony.engine.schedule.ScheduleParameters.*;
+
+/*
+ * Saves the data of a run to an OutputSink.
+ * 
+ * The rows of each tick are copied to a record and written by a background
+ * thread, so the simulation doesn't wait for the output. It only waits when
+ * the queue of records is full. Written records go back to free to be reused.
+ * 
+ * Births and exits are taken from the lifecycle events of the SupplyManager
+ * as they happen, so the constant data of a firm is copied once.
+ * 
+ * Rows per firm may be sampled (see ModelParameters.firmSampleInterval). On
+ * the ticks left out only the firms born keep their row, and every firm that
+ * exits gets a last row with its state on exit. Sampled ticks have the same
+ * rows as a run without sampling.
+ */
+public class DataCollector implements FirmLifecycleListener {
+
+	private static final TickRecord END_OF_RUN = new TickRecord(
+			new FirmColumn[0]);
+
+	private int run;
+	private SupplyManager suppMan = null;
+	private RunOutput output;
+
+	private BlockingQueue<TickRecord> queue;
+	private BlockingQueue<TickRecord> free;
+
+	// The record of the tick being stepped, once it has any row
+	private TickRecord pending = null;
+	private Thread writer;
+	private WriterMetrics metrics = new WriterMetrics();
+
+	// First error of the writer. The simulation stops when it sees it
+	private volatile IOException error = null;
+
+	/*
+	 * An instance is created on each run. The info of the whole simulation is
+	 * saved once when sink is opened
+	 */
+	public DataCollector(OutputSink sink, SupplyManager sm, int run)
+			throws IOException {
+
+		this(sink.openRun(run, sm.params), sm, run);
+
+	}
+
+	/*
+	 * Saves the data of run to output, already opened
+	 */
+	DataCollector(RunOutput output, SupplyManager sm, int run) {
+
+		suppMan = sm;
+		this.run = run;
+		this.output = output;
+
+		int capacity = sm.params.outputQueueCapacity;
+		queue = new ArrayBlockingQueue<TickRecord>(capacity);
+		free = new ArrayBlockingQueue<TickRecord>(capacity + 1);
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "Output writer, run " + run);
+		writer.setDaemon(true);
+		writer.start();
+
+		sm.addLifecycleListener(this);
+
+	}
+
+	@ScheduledMethod(start = 1, interval = 1, priority = LAST_PRIORITY)
+	public void saveEveryStep() {
+		save(GetTickCount());
+	}
+
+	/*
+	 * Copies the data of tick for the writer. Used directly when there is no
+	 * Repast schedule
+	 */
+	public void save(double tick) {
+		if (error != null)
+			throw new RuntimeException("Output of run " + run + " failed",
+					error);
+
+		TickRecord r = pending();
+		pending = null;
+
+		r.setMarket(tick, suppMan);
+
+		boolean sampled = isSampled(tick);
+
+		for (Firm f : suppMan.firms()) {
+			if (r.aggregates != null)
+				r.aggregates.addFirm(f);
+			else if (sampled || r.isNewFirm(f.agentIntID))
+				r.addFirm(f);
+
+			if (r.sketches != null)
+				r.sketchFirm(f);
+		}
+
+		enqueue(r);
+
+	}
+
+	public void firmBorn(Firm f, double tick) {
+		TickRecord r = pending();
+		if (r.aggregates != null)
+			r.aggregates.addBirth(f);
+		else
+			r.addNewFirm(f);
+	}
+
+	public void firmExited(Firm f, double tick, ExitCause cause) {
+		TickRecord r = pending();
+		if (r.aggregates != null) {
+			r.aggregates.addExit(f);
+		} else {
+			r.addExit(f, cause);
+			if (!isSampled(tick))
+				r.addFirm(f);
+		}
+	}
+
+	private boolean isSampled(double tick) {
+		ModelParameters p = suppMan.params;
+		return ((long) tick) % p.firmSampleInterval == 0
+				|| (tick >= p.firmSampleFromTick && tick <= p.firmSampleToTick);
+	}
+
+	private TickRecord newRecord() {
+		ModelParameters p = suppMan.params;
+		TickRecord r = new TickRecord(p.firmColumns);
+		if (p.aggregateOnly)
+			r.aggregates = new TickAggregates(p.firmColumns, p);
+		if (p.sketchColumns.length > 0) {
+			r.sketchColumns = p.sketchColumns;
+			r.sketches = new QuantileSketch[p.sketchColumns.length];
+			for (int c = 0; c < r.sketches.length; c++)
+				r.sketches[c] = new QuantileSketch(p.sketchK);
+		}
+		return r;
+	}
+
+	private TickRecord pending() {
+		if (pending == null) {
+			pending = free.poll();
+			if (pending == null)
+				pending = newRecord();
+			pending.clear();
+		}
+		return pending;
+	}
+
+	private void enqueue(TickRecord r) {
+		if (!queue.offer(r)) {
+			long start = System.nanoTime();
+			try {
+				queue.put(r);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			metrics.stalled(System.nanoTime() - start);
+		}
+
+		metrics.queued(queue.size());
+	}
+
+	/*
+	 * Body of the writer thread. After an error it goes on taking records,
+	 * so the simulation never waits for it
+	 */
+	private void write() {
+		try {
+			TickRecord r;
+			while ((r = queue.take()) != END_OF_RUN) {
+				if (error == null) {
+					long start = System.nanoTime();
+					try {
+						output.writeTick(r);
+					} catch (IOException e) {
+						error = e;
+					}
+					metrics.written(rows(r), System.nanoTime() - start);
+				}
+
+				free.offer(r);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static int rows(TickRecord r) {
+		int sketches = (r.sketches != null) ? r.sketches.length : 0;
+		if (r.aggregates != null)
+			return 1 + r.aggregates.buckets + sketches;
+		else
+			return 1 + r.newFirms + r.exits + r.firms + sketches;
+	}
+
+	@ScheduledMethod(start = END, priority = LAST_PRIORITY)
+	public void endOfRun() {
+		try {
+			close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Waits for the writer to save every tick queued and closes the output
+	 */
+	public void close() throws IOException {
+		enqueue(END_OF_RUN);
+
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		output.close();
+
+		if (error != null)
+			throw error;
+	}
+
+	public WriterMetrics getMetrics() {
+		return metrics;
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+}
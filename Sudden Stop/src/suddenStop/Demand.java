@@ -2,7 +2,6 @@ package suddenStop;
 
 import repast.simphony.ui.probe.*;
 import static java.lang.Math.*;
-import static repast.simphony.essentials.RepastEssentials.*;
 
 public class Demand {
 
@@ -12,50 +11,26 @@ public class Demand {
 	 * equivalent to the price of a substitute.
 	 * 
 	 */
-	public static double price(double quantity) {
+	public static double price(MarketConditions m, double quantity) {
 
-		int periods = (Integer) GetParameter("periods");
-		double elast = (Double) GetParameter("demandElasticity");
-		double subst = (Double) GetParameter("priceOfSubstitute");
-		double demandParam = (Double) GetParameter("demandParameter");
-		double demandShift = (Double) GetParameter("demandShift");
-
-		double time = GetTickCount() / periods;
-		double annualQuantity = quantity * periods;
+		double annualQuantity = quantity * m.periods;
 
 		if (quantity > 0) {
 			return min(
-					subst,
-					demandParam * pow(1.0 + demandShift, time / elast)
-							* pow(annualQuantity, -1.0 / elast))
-					* (1.0 - getSSMagnitude());
+					m.priceOfSubstitute,
+					m.demandParameter * m.demandShiftFactor
+							* pow(annualQuantity, -m.inverseElasticity))
+					* (1.0 - m.sSMagnitude);
 		} else {
-			return (Double) GetParameter("priceOfSubstitute")
-					* (1.0 - getSSMagnitude());
+			return m.priceOfSubstitute * (1.0 - m.sSMagnitude);
 		}
 
 	}
 
-	public static boolean isSS() {
-		double sSM = (Double) GetParameter("suddenStopMagnitude");
-		double sSD = (Double) GetParameter("suddenStopDuration")
-				* (Integer) GetParameter("periods");
-
-		int sSS = (Integer) GetParameter("suddenStopStart")
-				* (Integer) GetParameter("periods");
-
-		return (sSM > 0.0) && (sSD + sSS > GetTickCount())
-				&& (GetTickCount() >= sSS);
-
-	}
-
-	public static double getSSMagnitude() {
+	public static boolean isSS(ModelParameters p, double tick) {
 
-		if (isSS()) {
-			return (Double) GetParameter("suddenStopMagnitude");
-		} else {
-			return 0.0;
-		}
+		return (p.suddenStopMagnitude > 0.0) && (p.suddenStopEndTick > tick)
+				&& (tick >= p.suddenStopStartTick);
 
 	}
 
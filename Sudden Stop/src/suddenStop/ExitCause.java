@@ -0,0 +1,17 @@
+package suddenStop;
+
+/*
+ * Why a firm left the industry
+ */
+public enum ExitCause {
+
+	// Smoothed performance fell below the minimum, its WACC
+	PERFORMANCE,
+
+	// Funds from operations were negative and could not be covered
+	CASH,
+
+	// Depreciated capital could not be raised back to the minimum
+	MIN_CAPITAL
+
+}
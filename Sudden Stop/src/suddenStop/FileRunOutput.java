@@ -0,0 +1,157 @@
+package suddenStop;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The data tables of a run, written as tab separated files in its directory.
+ * When only aggregates are saved, IndustryAggregates replaces the tables
+ * with rows per firm. With firmTrajectories the rows per tick of the firms
+ * are saved as a TrajectoryFile instead of IndividualFirmsPerTick.tsv
+ */
+public class FileRunOutput implements RunOutput {
+
+	private int simID;
+	private int run;
+
+	private Writer mktData;
+	private Writer firmsConstData;
+	private Writer firmsPerTickData;
+	private TrajectoryFile trajectories = null;
+	private Writer firmExits;
+	private int perTickColumns;
+
+	private AggregatesFile aggregates = null;
+	private SketchFile sketches = null;
+
+	private List<Closeable> outputs = new ArrayList<Closeable>();
+
+	// Rows are built here and written at once
+	private StringBuilder line = new StringBuilder(256);
+
+	FileRunOutput(File runDir, int simID, int run, ModelParameters params)
+			throws IOException {
+
+		this.simID = simID;
+		this.run = run;
+		FirmColumn[] columns = params.firmColumns;
+		perTickColumns = columns.length;
+
+		mktData = FileSink.open(new File(runDir, "MarketData.tsv"),
+				"Simulation", "RunNumber", "Tick", "Price", "TotalQuantity");
+		outputs.add(mktData);
+
+		if (params.sketchColumns.length > 0) {
+			sketches = new SketchFile(runDir, simID, run,
+					params.sketchColumns);
+			outputs.add(sketches);
+		}
+
+		if (params.aggregateOnly) {
+			aggregates = new AggregatesFile(runDir, simID, run, params);
+			outputs.add(aggregates);
+			return;
+		}
+
+		firmsConstData = FileSink.open(
+				new File(runDir, "IndividualFirms.tsv"), columns(
+						new String[] { "Simulation", "RunNumber", "Firm" },
+						TickRecord.CONST_NAMES));
+		firmExits = FileSink.open(new File(runDir, "FirmExits.tsv"),
+				"Simulation", "RunNumber", "Tick", "Firm", "Cause");
+		outputs.add(firmsConstData);
+		outputs.add(firmExits);
+
+		if (params.firmTrajectories) {
+			trajectories = new TrajectoryFile(runDir, columns);
+			outputs.add(trajectories);
+		} else {
+			firmsPerTickData = FileSink.open(new File(runDir,
+					"IndividualFirmsPerTick.tsv"), columns(new String[] {
+					"Simulation", "RunNumber", "Tick", "Firm" },
+					FirmColumn.names(columns)));
+			outputs.add(firmsPerTickData);
+		}
+
+	}
+
+	private static String[] columns(String[] keys, String[] values) {
+		String[] c = new String[keys.length + values.length];
+		System.arraycopy(keys, 0, c, 0, keys.length);
+		System.arraycopy(values, 0, c, keys.length, values.length);
+		return c;
+	}
+
+	public void writeTick(TickRecord r) throws IOException {
+
+		line.setLength(0);
+		line.append(simID).append('\t').append(run).append('\t').append(
+				r.tick).append('\t').append(r.price).append('\t').append(
+				r.totalQuantity).append('\n');
+		mktData.append(line);
+
+		if (sketches != null)
+			sketches.write(r);
+
+		if (aggregates != null) {
+			aggregates.write(r);
+			return;
+		}
+
+		for (int i = 0; i < r.newFirms; i++) {
+			line.setLength(0);
+			line.append(simID).append('\t').append(run).append('\t').append(
+					r.newFirmIDs[i]);
+			int base = i * TickRecord.CONST_COLUMNS;
+			for (int c = 0; c < TickRecord.CONST_COLUMNS; c++)
+				line.append('\t').append(r.newFirmData[base + c]);
+			line.append('\n');
+			firmsConstData.append(line);
+		}
+
+		for (int i = 0; i < r.exits; i++) {
+			line.setLength(0);
+			line.append(simID).append('\t').append(run).append('\t').append(
+					r.tick).append('\t').append(r.exitFirmIDs[i]).append('\t')
+					.append(r.exitCauses[i]).append('\n');
+			firmExits.append(line);
+		}
+
+		if (trajectories != null) {
+			trajectories.write(r);
+			return;
+		}
+
+		for (int i = 0; i < r.firms; i++) {
+			line.setLength(0);
+			line.append(simID).append('\t').append(run).append('\t').append(
+					r.tick).append('\t').append(r.firmIDs[i]);
+			int base = i * perTickColumns;
+			for (int c = 0; c < perTickColumns; c++)
+				line.append('\t').append(r.firmData[base + c]);
+			line.append('\n');
+			firmsPerTickData.append(line);
+		}
+
+	}
+
+	public void close() throws IOException {
+		IOException error = null;
+
+		for (Closeable c : outputs) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+
+		if (error != null)
+			throw error;
+	}
+
+}
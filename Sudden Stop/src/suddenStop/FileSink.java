@@ -0,0 +1,196 @@
+package suddenStop;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Saves the data in tab separated files, one per table, so no database is
+ * needed. Each simulation gets a directory sim-<SimID> under dir, with the
+ * simulation tables, and a directory run-<run> per run with the run tables.
+ * Every file starts with a header of the column names.
+ * 
+ * The configuration of each run is saved once in parameter-sets/<hash>.tsv
+ * under dir, shared by every simulation, and RunParameters refers to it.
+ */
+public class FileSink implements OutputSink {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private File dir;
+	private File simDir;
+	private int simID;
+
+	private File paramSetsDir;
+	// Hashes known to be saved
+	private Set<String> paramSets = new HashSet<String>();
+
+	public FileSink(String dir) {
+		this.dir = new File(dir != null ? dir : "output");
+		paramSetsDir = new File(this.dir, "parameter-sets");
+	}
+
+	public void open(ModelParameters params) throws IOException {
+
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+
+		/*
+		 * The next SimID is the highest in dir plus one. Creating the
+		 * directory is atomic, so another simulation can't take it
+		 */
+		simID = nextSimID();
+		while (!(simDir = new File(dir, "sim-" + simID)).mkdir())
+			simID++;
+
+		Writer w = open(new File(simDir, "Simulations.tsv"), "SimID",
+				"Description");
+		try {
+			row(w, simID, params.getString("simDescription"));
+		} finally {
+			w.close();
+		}
+
+		w = open(new File(simDir, "SimulationParameters.tsv"), "SimID",
+				"Name", "Value");
+		try {
+			for (String paramName : params.names()) {
+				if (!OutputSinks.isSimData(paramName)
+						&& !OutputSinks.isRunParam(paramName))
+					row(w, simID, paramName, params.get(paramName));
+			}
+		} finally {
+			w.close();
+		}
+
+		System.out.println("Simulation " + simID + " saved to " + simDir);
+
+	}
+
+	public RunOutput openRun(int run, ModelParameters params)
+			throws IOException {
+
+		File runDir = new File(simDir, "run-" + run);
+		if (!runDir.isDirectory() && !runDir.mkdir())
+			throw new IOException("Could not create " + runDir);
+
+		ParameterSet paramSet = ParameterSet.of(params);
+		saveParameterSet(paramSet);
+
+		Writer w = open(new File(runDir, "RunParameters.tsv"), "SimID",
+				"RunNumber", "SuddenStopMagnitude", "SuddenStopStart",
+				"RandomSeed", "ParamHash");
+		try {
+			row(w, simID, run, params.suddenStopMagnitude,
+					params.suddenStopStart, params.get("randomSeed"),
+					paramSet.hash);
+		} finally {
+			w.close();
+		}
+
+		return createRunOutput(runDir, run, params);
+
+	}
+
+	/*
+	 * Opens the data tables of run in runDir
+	 */
+	protected RunOutput createRunOutput(File runDir, int run,
+			ModelParameters params) throws IOException {
+		return new FileRunOutput(runDir, simID, run, params);
+	}
+
+	/*
+	 * Saves set unless it is already there. It is written to a temporary
+	 * file and renamed, so other runs or simulations never see it half
+	 * written
+	 */
+	private synchronized void saveParameterSet(ParameterSet set)
+			throws IOException {
+
+		if (paramSets.contains(set.hash))
+			return;
+
+		File f = new File(paramSetsDir, set.hash + ".tsv");
+		if (!f.exists()) {
+			if (!paramSetsDir.isDirectory() && !paramSetsDir.mkdirs())
+				throw new IOException("Could not create " + paramSetsDir);
+
+			File tmp = File.createTempFile(set.hash, ".tmp", paramSetsDir);
+			Writer w = open(tmp, "Name", "Value");
+			try {
+				for (Map.Entry<String, String> e : set.values().entrySet())
+					row(w, e.getKey(), e.getValue());
+			} finally {
+				w.close();
+			}
+
+			// Another simulation may have saved it meanwhile
+			if (!tmp.renameTo(f)) {
+				tmp.delete();
+				if (!f.exists())
+					throw new IOException("Could not rename " + tmp + " to "
+							+ f);
+			}
+		}
+
+		paramSets.add(set.hash);
+
+	}
+
+	/*
+	 * Every file is closed once written, so there is nothing to release
+	 */
+	public void close() throws IOException {
+	}
+
+	public int getSimID() {
+		return simID;
+	}
+
+	private int nextSimID() {
+		int max = 0;
+
+		String[] names = dir.list();
+		if (names != null) {
+			for (String n : names) {
+				if (n.startsWith("sim-")) {
+					try {
+						max = Math.max(max, Integer.parseInt(n.substring(4)));
+					} catch (NumberFormatException ignore) {
+					}
+				}
+			}
+		}
+
+		return max + 1;
+	}
+
+	/*
+	 * Creates f with a header of columns
+	 */
+	static Writer open(File f, String... columns) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(f), "UTF-8"), BUFFER_SIZE);
+		row(w, (Object[]) columns);
+		return w;
+	}
+
+	static void row(Writer w, Object... values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				w.write('\t');
+			// Tabs and line breaks would break the row
+			w.write(String.valueOf(values[i]).replace('\t', ' ').replace(
+					'\n', ' ').replace('\r', ' '));
+		}
+		w.write('\n');
+	}
+
+}
@@ -15,47 +15,115 @@ package suddenStop;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.pow;
-import static repast.simphony.essentials.RepastEssentials.GetParameter;
-import static repast.simphony.essentials.RepastEssentials.GetTickCount;
+import static java.lang.Math.sqrt;
 import static repast.simphony.essentials.RepastEssentials.RemoveAgentFromModel;
 import static suddenStop.CashUsage.CASH;
 import static suddenStop.CashUsage.LEVERAGE;
+import static suddenStop.CashUsage.ONLY_CASH;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import repast.simphony.context.Context;
-import repast.simphony.engine.environment.RunEnvironment;
 
 public class Firm {
 
-	public static SupplyManager supplyManager;
+	final SupplyManager supplyManager;
 
-	private FirmState currentState, nextState;
-	private boolean toBeKilled = false;
+	FirmState currentState, nextState;
+	// Set when the firm has to leave the industry at the end of the tick
+	ExitCause exitCause = null;
 	private ArrayList<Cohort> shadowFirms;
 
-	protected static long agentIDCounter = 1;
-	protected long agentIntID = agentIDCounter++;
-	protected String agentID = "Firm " + agentIntID;
+	protected long agentIntID;
 
-	public Firm(Context<Object> context) {
-
-		context.add(this);
-
-		nextState = new FirmState();
+	/*
+	 * Materialises an entrant that was drawn and screened on prototype. The
+	 * firm and its cohort shadows are added to guiContext unless it is null
+	 */
+	public Firm(Context<Object> guiContext, Firm prototype) {
 
-		nextState.quantityPerPeriod = nextState.getCapital()
-				* nextState.getCapitalProductivityPerPeriod();
+		supplyManager = prototype.supplyManager;
+		agentIntID = supplyManager.nextFirmID();
 
-		currentState = nextState.clone();
+		currentState = new FirmState(supplyManager.params);
+		nextState = new FirmState(supplyManager.params);
+		currentState.copyFrom(prototype.currentState);
+		nextState.copyFrom(prototype.nextState);
 
-		if (!RunEnvironment.getInstance().isBatch()) {
+		if (guiContext != null) {
+			guiContext.add(this);
 			shadowFirms = new ArrayList<Cohort>(3);
-			addToCohorts(context, 3);
+			addToCohorts(guiContext, 3);
 		}
 
 	}
 
+	/*
+	 * Copies src, keeping its ID, for a population owned by supplyManager
+	 */
+	Firm(SupplyManager supplyManager, Firm src) {
+		this(supplyManager);
+
+		agentIntID = src.agentIntID;
+		exitCause = src.exitCause;
+		currentState.copyFrom(src.currentState);
+		nextState.copyFrom(src.nextState);
+	}
+
+	/*
+	 * Writes the ID, the exit cause (0 for none, or its ordinal plus one) and
+	 * both states of the firm, for checkpoints
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeLong(agentIntID);
+		out.writeByte(exitCause == null ? 0 : exitCause.ordinal() + 1);
+		currentState.writeTo(out);
+		nextState.writeTo(out);
+	}
+
+	/*
+	 * Reads a firm written by writeTo(DataOutput) into this one
+	 */
+	void readFrom(DataInput in) throws IOException {
+		agentIntID = in.readLong();
+
+		int cause = in.readUnsignedByte();
+		if (cause > ExitCause.values().length)
+			throw new IOException("Unknown exit cause " + cause + " of firm "
+					+ agentIntID);
+		exitCause = (cause == 0) ? null : ExitCause.values()[cause - 1];
+
+		currentState.readFrom(in);
+		nextState.readFrom(in);
+	}
+
+	/*
+	 * Creates a firm without identity. It is used to screen entrants before
+	 * they are added to a population
+	 */
+	Firm(SupplyManager supplyManager) {
+		this.supplyManager = supplyManager;
+		currentState = new FirmState(supplyManager.params);
+		nextState = new FirmState(supplyManager.params);
+	}
+
+	/*
+	 * Draws the initial state of an entrant
+	 */
+	void drawEntrant() {
+
+		nextState.drawEntrant(supplyManager);
+
+		nextState.setQuantityPerPeriod(nextState.getCapital()
+				* nextState.getCapitalProductivityPerPeriod());
+
+		currentState.copyFrom(nextState);
+
+	}
+
 	private void addToCohorts(Context<Object> context, int cohorts) {
 		Object c = null;
 
@@ -95,17 +163,17 @@ public class Firm {
 
 	}
 
-	private int getLevCohort(int cohorts) {
+	int getLevCohort(int cohorts) {
 
-		double min = (Double) GetParameter("leverageMin");
-		double max = (Double) GetParameter("leverageMax");
+		double min = supplyManager.params.leverageMin;
+		double max = supplyManager.params.leverageMax;
 		double cohortSize = (max - min) / cohorts;
 
 		return (int) (Math.floor((getNetLeverage() - min) / cohortSize) + 1);
 	}
 
-	private int getTimeCohort(int cohorts) {
-		int[] lim = supplyManager.timeCohortLimits;
+	int getTimeCohort(int cohorts) {
+		int[] lim = supplyManager.params.timeCohortLimits;
 		double born = currentState.getBornInYears();
 
 		for (int i = 0; i < lim.length; i++) {
@@ -117,62 +185,70 @@ public class Firm {
 
 	}
 
-	public void moveToNextState() {
+	/*
+	 * The innovation error is drawn by the caller, so firms can move to their
+	 * next state in parallel without sharing the generator
+	 */
+	public void moveToNextState(double innovationError) {
 
 		// apply innovation
 		nextState.firstUnitCost = nextState.firstUnitCost
 				/ ((nextState.getRDPerPeriod() + 1.0) * nextState.rDEfficiency)
-				* supplyManager.innovationErrorNormal.nextDouble();
+				* innovationError;
 
 		// Define quantityPerPeriod offered
-		nextState.quantityPerPeriod = nextState.getCapital()
-				* nextState.getCapitalProductivityPerPeriod();
+		nextState.setQuantityPerPeriod(nextState.getCapital()
+				* nextState.getCapitalProductivityPerPeriod());
 
-		nextState.resetExternalEquityAvailable();
+		nextState.resetExternalEquityAvailable(supplyManager.market.isSS());
 
-		currentState = nextState.clone();
+		/*
+		 * Swap buffers. The old current state becomes the next one, and it is
+		 * overwritten in processResponseToDemand before being read
+		 */
+		FirmState tmp = currentState;
+		currentState = nextState;
+		nextState = tmp;
 
 	}
 
 	/**
 	 * Estimates if nextDecision would be an exit given nextState and price It
 	 * works like ProcessResponseToDemand but without changing the current
-	 * situation
+	 * situation. The estimation is done on scratch, which is overwritten
 	 */
-	public boolean estimateResponseToDemand(double price) {
+	public boolean estimateResponseToDemand(double price, FirmState scratch) {
 
-		FirmState tmpSt = nextState.clone();
+		scratch.copyFrom(nextState);
 
-		return processProfit(tmpSt, price);
+		return (processProfit(scratch, price) == null);
 
 	}
 
 	/**
 	 * 
-	 * Process demand respond and returns false if firm exits the industry,
-	 * otherwise returns true
+	 * Process demand respond and sets exitCause if firm exits the industry
 	 * 
 	 */
 	public void processResponseToDemand(double price) {
 
-		if (!processProfit(currentState, price)) {
-			toBeKilled = true;
+		exitCause = processProfit(currentState, price);
+		if (exitCause != null)
 			return;
-		}
 
 		// From here onward all modifications are done in nextState
-		nextState = currentState.clone();
+		nextState.copyFrom(currentState);
 
 		acumulateVariables();
 
 		if (!checkMinCapital(price)) {
-			toBeKilled = true;
+			exitCause = ExitCause.MIN_CAPITAL;
 		}
 
 	}
 
 	public void killShadowFirms() {
-		if (RunEnvironment.getInstance().isBatch())
+		if (shadowFirms == null)
 			return;
 
 		for (Cohort c : shadowFirms) {
@@ -189,9 +265,10 @@ public class Firm {
 	}
 
 	/*
-	 * Returns true is profit was processed OK, i.e. if it is not an exit
+	 * Returns null if profit was processed OK, otherwise the cause of the
+	 * exit. A cash shortfall is reported before low performance
 	 */
-	private boolean processProfit(FirmState st, double price) {
+	private ExitCause processProfit(FirmState st, double price) {
 		boolean perfStatus, cashStatus;
 
 		double profit = calcProfitPerPeriod(st, price);
@@ -220,13 +297,18 @@ public class Firm {
 		}
 
 		// Check Performance
-		if (!Demand.isSS()) {
+		if (!supplyManager.market.isSS()) {
 			perfStatus = (calcPerformance(st) >= getMinimumPerformance(st));
 		} else {
 			perfStatus = true;
 		}
 
-		return (perfStatus && cashStatus);
+		if (!cashStatus)
+			return ExitCause.CASH;
+		else if (!perfStatus)
+			return ExitCause.PERFORMANCE;
+		else
+			return null;
 	}
 
 	private double getMinimumPerformance(FirmState st) {
@@ -240,18 +322,16 @@ public class Firm {
 	}
 
 	private double calcPerformance(FirmState st) {
-		double p = (Integer) GetParameter("periods");
-		double w = (Double) GetParameter("performanceWeight");
-		return (1 - (1 - w) / p) * st.getPerformance() + (1 - w) / p
-				* st.getROI();
+		ModelParameters p = supplyManager.params;
+		return p.performanceKeep * st.getPerformance()
+				+ p.performanceROIWeight * st.getROI();
 	}
 
 	private void acumulateVariables() {
 
 		nextState.setPerformance(calcPerformance(currentState));
 
-		nextState.setAcumQ(currentState.getAcumQ()
-				+ currentState.getQuantityPerPeriod());
+		nextState.accumulateQuantity(currentState);
 
 		nextState.setAcumProfit(currentState.getAcumProfit()
 				+ currentState.getProfitPerPeriod());
@@ -265,7 +345,7 @@ public class Firm {
 				- currentState.getDepreciationPerPeriod();
 
 		// Meet minimum capital
-		double minimalNeeds = (Double) GetParameter("minimumCapital")
+		double minimalNeeds = supplyManager.params.minimumCapital
 				- nextState.getCapital();
 
 		if (minimalNeeds > 0) {
@@ -278,6 +358,10 @@ public class Firm {
 
 	private double raiseFunds(FirmState st, CashUsage cashUsage, double funds) {
 
+		// During a sudden stop firms can't borrow, only use their cash
+		if (supplyManager.market.isSS())
+			cashUsage = ONLY_CASH;
+
 		double fgoUsed = st.getAvailableFundsFromOperationsPerPeriod();
 		double externalEquityUsed = st.getExternalEquityAvailablePerPeriod();
 
@@ -316,7 +400,7 @@ public class Firm {
 	private double getNetInvestment(FirmState st, double price) {
 		double optCapIncrPercent;
 
-		optCapIncrPercent = (Double) GetParameter("investmentParam")
+		optCapIncrPercent = supplyManager.params.investmentParam
 				* (1 - getOptimalMarkUp() * getMarginalCost(st) / price);
 
 		// net investment should be >=0
@@ -327,15 +411,24 @@ public class Firm {
 	}
 
 	private double getMarginalCost(FirmState st) {
-		int periods = (Integer) GetParameter("periods");
-		double wACCxPer = st.getWACC() / periods;
-		double deprecxPer = (Double) GetParameter("depreciation") / periods;
-
-		return st.getFirstUnitCost()
-				* (1.0 + st.getLRExpon())
-				* pow(st.getAcumQ() + st.getQuantityPerPeriod(),
-						st.getLRExpon()) + st.getMinVarCost()
-				+ (wACCxPer + deprecxPer)
+		double wACCxPer = supplyManager.params.wACCPerPeriod;
+		double deprecxPer = supplyManager.params.depreciationPerPeriod;
+
+		/*
+		 * pow(acumQ + q, lRExpon) from the cached pow(acumQ + q, 1 + lRExpon).
+		 * Before anything is produced the division would be 0 / 0, so the
+		 * power is taken directly: +Infinity, or 1 without learning
+		 */
+		double acumQ = st.getAcumQ() + st.getQuantityPerPeriod();
+		double learningCost;
+		if (acumQ > 0)
+			learningCost = st.getFirstUnitCost() * (1.0 + st.getLRExpon())
+					* st.getNextAcumQPow() / acumQ;
+		else
+			learningCost = st.getFirstUnitCost() * (1.0 + st.getLRExpon())
+					* pow(acumQ, st.getLRExpon());
+
+		return learningCost + st.getMinVarCost() + (wACCxPer + deprecxPer)
 				/ st.getCapitalProductivityPerPeriod();
 
 	}
@@ -343,14 +436,9 @@ public class Firm {
 	private void selectRD() {
 
 		// Then new R&D is determined to optimize First unit cost.
-		double optRD = pow(
-				nextState.getFirstUnitCost()
-						/ nextState.getRDEfficiency()
-						* (pow(nextState.getAcumQ()
-								+ nextState.getQuantityPerPeriod(),
-								1.0 + nextState.getLRExpon()) - pow(
-								nextState.getAcumQ(),
-								1.0 + nextState.getLRExpon())), 0.5) - 1.0;
+		double optRD = sqrt(nextState.getFirstUnitCost()
+				/ nextState.getRDEfficiency()
+				* nextState.getLearningCurveQuantity()) - 1.0;
 
 		/*
 		 * There is a minimum amount of RD to make FUC decrease
@@ -362,8 +450,8 @@ public class Firm {
 
 	public double getOptimalMarkUp() {
 		double mktSh = getMktShare();
-		double demElast = (Double) GetParameter("demandElasticity");
-		double supElast = (Double) GetParameter("supplyElasticity");
+		double demElast = supplyManager.params.demandElasticity;
+		double supElast = supplyManager.params.supplyElasticity;
 
 		return (demElast + (1 - mktSh) * supElast)
 				/ (demElast + (1 - mktSh) * supElast - mktSh);
@@ -375,7 +463,11 @@ public class Firm {
 	}
 
 	public boolean isToBeKilled() {
-		return toBeKilled;
+		return exitCause != null;
+	}
+
+	public ExitCause getExitCause() {
+		return exitCause;
 	}
 
 	public double getWACC() {
@@ -383,8 +475,8 @@ public class Firm {
 	}
 
 	public double getAge() {
-		return (GetTickCount() - currentState.getBorn())
-				/ (Integer) GetParameter("periods");
+		return (supplyManager.market.tick - currentState.getBorn())
+				/ supplyManager.params.periods;
 	}
 
 	// It includes equity cost
@@ -497,8 +589,7 @@ public class Firm {
 	}
 
 	public double getMktShare() {
-		return currentState.getQuantityPerPeriod()
-				/ supplyManager.totalQuantityPerPeriod;
+		return supplyManager.getMktShare(currentState.getQuantityPerPeriod());
 	}
 
 	public double getAcumQ() {
@@ -542,7 +633,7 @@ public class Firm {
 	}
 
 	public String toString() {
-		return this.agentID;
+		return "Firm " + agentIntID;
 	}
 
 }
@@ -0,0 +1,194 @@
+package suddenStop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * A column of the per tick data of firms. Only the getters of the columns
+ * chosen in the firmColumns parameter are called, so expensive ones like
+ * MedCost or TotVarCost are only computed when they are saved.
+ */
+public enum FirmColumn {
+
+	PROFIT("Profit") {
+		double get(Firm f) {
+			return f.getProfitPerPeriod();
+		}
+	},
+	QUANTITY("Quantity") {
+		double get(Firm f) {
+			return f.getQuantityPerPeriod();
+		}
+	},
+	RD("RD") {
+		double get(Firm f) {
+			return f.getRDPerPeriod();
+		}
+	},
+	FIRST_UNIT_COST("FirstUnitCost") {
+		double get(Firm f) {
+			return f.getFirstUnitCost();
+		}
+	},
+	CAPITAL("Capital") {
+		double get(Firm f) {
+			return f.getCapital();
+		}
+	},
+	// Net of cash
+	DEBT("Debt") {
+		double get(Firm f) {
+			return f.getDebt() - f.getCash();
+		}
+	},
+	MIN_VAR_COST("MinVarCost") {
+		double get(Firm f) {
+			return f.getMinVarCost();
+		}
+	},
+	// 1 or 0
+	TO_BE_KILLED("ToBeKilled") {
+		double get(Firm f) {
+			return f.isToBeKilled() ? 1 : 0;
+		}
+	},
+	ACUM_Q("AcumQ") {
+		double get(Firm f) {
+			return f.getAcumQ();
+		}
+	},
+	ACUM_PROFIT("AcumProfit") {
+		double get(Firm f) {
+			return f.getAcumProfit();
+		}
+	},
+	MED_COST("MedCost") {
+		double get(Firm f) {
+			return f.getMedCost();
+		}
+	},
+	TOT_FIXED_COST("TotFixedCost") {
+		double get(Firm f) {
+			return f.getTotFixedCostPerPeriod();
+		}
+	},
+	TOT_VAR_COST("TotVarCost") {
+		double get(Firm f) {
+			return f.getTotVarCostPerPeriod();
+		}
+	},
+	INTEREST("Interest") {
+		double get(Firm f) {
+			return f.getInterestPerPeriod();
+		}
+	},
+	EXPECTED_EQUITY_RETRIBUTION("ExpectedEquityRetribution") {
+		double get(Firm f) {
+			return f.getExpectedEquityRetributionPerPeriod();
+		}
+	},
+	PERFORMANCE("Performance") {
+		double get(Firm f) {
+			return f.getPerformance();
+		}
+	},
+	EBITDA("EBITDA") {
+		double get(Firm f) {
+			return f.getEBITDAPerPeriod();
+		}
+	},
+	MKT_SHARE("MktShare") {
+		double get(Firm f) {
+			return f.getMktShare();
+		}
+	},
+	EXPECTED_CAPITAL_RETRIBUTION("ExpectedCapitalRetribution") {
+		double get(Firm f) {
+			return f.getExpectedCapitalRetributionPerPeriod();
+		}
+	},
+	// Not in IndividualFirmsPerTick, for aggregates and sketches
+	NET_LEVERAGE("NetLeverage") {
+		double get(Firm f) {
+			return f.getNetLeverage();
+		}
+	},
+	CASH("Cash") {
+		double get(Firm f) {
+			return f.getCash();
+		}
+	};
+
+	/*
+	 * The columns of the IndividualFirmsPerTick table, in table order
+	 */
+	public static final FirmColumn[] FULL = { PROFIT, QUANTITY, RD,
+			FIRST_UNIT_COST, CAPITAL, DEBT, MIN_VAR_COST, TO_BE_KILLED, ACUM_Q,
+			ACUM_PROFIT, MED_COST, TOT_FIXED_COST, TOT_VAR_COST, INTEREST,
+			EXPECTED_EQUITY_RETRIBUTION, PERFORMANCE, EBITDA, MKT_SHARE,
+			EXPECTED_CAPITAL_RETRIBUTION };
+
+	public static final FirmColumn[] SHORT = { PROFIT, QUANTITY, CAPITAL,
+			DEBT, ACUM_Q, ACUM_PROFIT, MED_COST, MKT_SHARE, INTEREST };
+
+	/*
+	 * Name of the column in the tables
+	 */
+	public final String columnName;
+
+	private FirmColumn(String columnName) {
+		this.columnName = columnName;
+	}
+
+	abstract double get(Firm f);
+
+	/*
+	 * spec is a profile, short or full, or column names separated by ;
+	 * Without spec the short profile is used
+	 */
+	public static FirmColumn[] parse(String spec) {
+		if (spec == null || spec.trim().length() == 0
+				|| spec.trim().equalsIgnoreCase("short"))
+			return SHORT.clone();
+		if (spec.trim().equalsIgnoreCase("full"))
+			return FULL.clone();
+
+		return parseNames(spec);
+	}
+
+	/*
+	 * Column names separated by ; An empty spec is no column
+	 */
+	public static FirmColumn[] parseNames(String spec) {
+		if (spec == null || spec.trim().length() == 0)
+			return new FirmColumn[0];
+
+		List<FirmColumn> columns = new ArrayList<FirmColumn>();
+		for (String name : spec.split(";")) {
+			FirmColumn c = forName(name.trim());
+			if (c == null)
+				throw new IllegalArgumentException("Unknown firm column "
+						+ name.trim());
+			if (!columns.contains(c))
+				columns.add(c);
+		}
+
+		return columns.toArray(new FirmColumn[columns.size()]);
+	}
+
+	public static FirmColumn forName(String columnName) {
+		for (FirmColumn c : values()) {
+			if (c.columnName.equalsIgnoreCase(columnName))
+				return c;
+		}
+		return null;
+	}
+
+	public static String[] names(FirmColumn[] columns) {
+		String[] names = new String[columns.length];
+		for (int i = 0; i < columns.length; i++)
+			names[i] = columns[i].columnName;
+		return names;
+	}
+
+}
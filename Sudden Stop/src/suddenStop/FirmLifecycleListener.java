@@ -0,0 +1,19 @@
+package suddenStop;
+
+/*
+ * Told by SupplyManager when firms enter and leave the industry. Calls come
+ * from the thread stepping the model, in the phase where the event happens.
+ */
+public interface FirmLifecycleListener {
+
+	/*
+	 * f entered at tick. Its constant data is already set
+	 */
+	public void firmBorn(Firm f, double tick);
+
+	/*
+	 * f is about to be removed at tick because of cause
+	 */
+	public void firmExited(Firm f, double tick, ExitCause cause);
+
+}
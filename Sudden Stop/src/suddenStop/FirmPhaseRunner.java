@@ -0,0 +1,140 @@
+package suddenStop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Runs a per firm phase over the slots [0, size) splitting them in chunks
+ * among a fixed pool of worker threads. It returns when every chunk is done,
+ * so each phase is a barrier.
+ *
+ * With a single thread, or too few firms to be worth splitting, the phase
+ * runs in the calling thread.
+ */
+public class FirmPhaseRunner {
+
+	public interface Phase {
+		public void run(int from, int to);
+	}
+
+	private static final int MIN_CHUNK = 256;
+
+	private int threads;
+	private ExecutorService pool = null;
+
+	public FirmPhaseRunner(int threads) {
+
+		this.threads = threads;
+
+		if (threads > 1) {
+			pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Firm phase worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+	}
+
+	/*
+	 * A phase that also adds up values of the firms. Each chunk accumulates
+	 * in its own array
+	 */
+	public interface SumPhase {
+		public void run(int from, int to, double[] sums);
+	}
+
+	public void run(int size, final Phase phase) {
+
+		int chunks = chunks(size);
+
+		if (chunks <= 1) {
+			phase.run(0, size);
+			return;
+		}
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int from = (int) ((long) size * c / chunks);
+			final int to = (int) ((long) size * (c + 1) / chunks);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					phase.run(from, to);
+					return null;
+				}
+			});
+		}
+
+		invokeAll(tasks);
+
+	}
+
+	/*
+	 * Runs phase leaving in sums the chunk sums added in chunk order, so the
+	 * result only depends on the number of threads
+	 */
+	public void sum(int size, double[] sums, final SumPhase phase) {
+
+		int chunks = chunks(size);
+
+		Arrays.fill(sums, 0.0);
+
+		if (chunks <= 1) {
+			phase.run(0, size, sums);
+			return;
+		}
+
+		final double[][] partial = new double[chunks][sums.length];
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int from = (int) ((long) size * c / chunks);
+			final int to = (int) ((long) size * (c + 1) / chunks);
+			final double[] chunkSums = partial[c];
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					phase.run(from, to, chunkSums);
+					return null;
+				}
+			});
+		}
+
+		invokeAll(tasks);
+
+		for (int c = 0; c < chunks; c++)
+			for (int j = 0; j < sums.length; j++)
+				sums[j] += partial[c][j];
+
+	}
+
+	private int chunks(int size) {
+		return (pool == null) ? 1 : Math.min(threads, size / MIN_CHUNK);
+	}
+
+	private void invokeAll(List<Callable<Object>> tasks) {
+		try {
+			for (Future<Object> f : pool.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	public void shutdown() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+}
@@ -0,0 +1,55 @@
+package suddenStop;
+
+/*
+ * The firms of the industry. SupplyManager runs each phase of a step through
+ * it, so it doesn't depend on how firms are stored.
+ *
+ * Populations keep the IndustryTotals they are given up to date.
+ */
+public interface FirmPopulation extends Iterable<Firm> {
+
+	public int size();
+
+	/*
+	 * innovationErrors holds one draw per firm, in iteration order. The
+	 * industry totals are summed again after the transition
+	 */
+	public void moveToNextState(double[] innovationErrors);
+
+	/*
+	 * Draws a potential entrant and adds it to the population if it is
+	 * profitable at price. Returns true if the firm entered. Entrants are
+	 * reported to SupplyManager.firmBorn
+	 */
+	public boolean addEntrant(double price);
+
+	/*
+	 * Firms take their profit or loss and raise the funds they need, so the
+	 * industry capital is summed again after it
+	 */
+	public void processResponseToDemand(double price);
+
+	/*
+	 * Removes firms to be killed, taking them out of the industry totals, and
+	 * returns how many were removed. Each one is reported to
+	 * SupplyManager.firmExited before it is removed
+	 */
+	public int killToBeKilledFirms();
+
+	public void planNextYear(double price);
+
+	/*
+	 * Appends a copy of f keeping its ID. The industry totals are not
+	 * updated, it is meant to restore a population from a checkpoint along
+	 * with its totals
+	 */
+	public void addCopy(Firm f);
+
+	/*
+	 * Returns a deep copy of the population owned by supplyManager, which
+	 * keeps totals up to date. Copies have no GUI
+	 */
+	public FirmPopulation copy(SupplyManager supplyManager,
+			FirmPhaseRunner runner, IndustryTotals totals);
+
+}
@@ -0,0 +1,68 @@
+package suddenStop;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * The Firm objects alive, kept in a dense array. A removed firm is replaced
+ * by the last one, so removing is O(1) and iteration never skips holes. The
+ * order of firms changes on removal.
+ */
+public class FirmRegistry implements Iterable<Firm> {
+
+	private Firm[] firms = new Firm[64];
+	private int size = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public Firm get(int i) {
+		return firms[i];
+	}
+
+	public void add(Firm f) {
+		if (size == firms.length)
+			firms = Arrays.copyOf(firms, 2 * firms.length);
+
+		firms[size++] = f;
+	}
+
+	/*
+	 * Removes the firm at i moving the last firm into its place, and returns
+	 * the removed firm
+	 */
+	public Firm remove(int i) {
+		Firm f = firms[i];
+
+		firms[i] = firms[--size];
+		firms[size] = null;
+
+		return f;
+	}
+
+	public Iterator<Firm> iterator() {
+
+		return new Iterator<Firm>() {
+			int i = 0;
+
+			public boolean hasNext() {
+				return i < size;
+			}
+
+			public Firm next() {
+				if (i >= size)
+					throw new NoSuchElementException();
+
+				return firms[i++];
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		};
+	}
+
+}
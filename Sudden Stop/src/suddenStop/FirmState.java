@@ -3,11 +3,14 @@ package suddenStop;
 import static java.lang.Math.log;
 import static java.lang.Math.max;
 import static java.lang.Math.pow;
-import static repast.simphony.essentials.RepastEssentials.GetParameter;
-import static repast.simphony.essentials.RepastEssentials.GetTickCount;
-import static suddenStop.CashUsage.ONLY_CASH;
 
-public class FirmState implements Cloneable {
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class FirmState {
+
+	private final ModelParameters params;
 
 	double initialFUC;
 	double rDEfficiency;
@@ -34,20 +37,39 @@ public class FirmState implements Cloneable {
 	private double minVarCost;
 	private double performance;
 
-	public FirmState() {
+	/*
+	 * Learning curve. The exponent is fixed when the firm is born.
+	 * acumQPow is pow(acumQ, 1 + lRExpon) and is carried forward as acumQ
+	 * accumulates. nextAcumQPow is pow(acumQ + quantityPerPeriod, 1 +
+	 * lRExpon), computed when first needed after any of both change (NaN
+	 * until then)
+	 */
+	private double lRExpon;
+	private double acumQPow;
+	private double nextAcumQPow;
+
+	public FirmState(ModelParameters params) {
+		this.params = params;
+	}
+
+	/*
+	 * Draws the initial variables of a new entrant from the distributions of sm
+	 */
+	void drawEntrant(SupplyManager sm) {
 
 		/*
 		 * Obtain random variables
 		 */
 		// A minimum FUC is set to 10% of mean
-		firstUnitCost = max(0.1 * (Double) GetParameter("firstUnitCostMean"),
-				Firm.supplyManager.fUCDistrib.nextDouble());
+		firstUnitCost = max(0.1 * params.firstUnitCostMean,
+				sm.fUCDistrib.nextDouble());
 		initialFUC = firstUnitCost;
 
 		rDEfficiency = max(0.0,
-				Firm.supplyManager.rDEfficiencyDistrib.nextDouble());
-		targetLeverage = Firm.supplyManager.targetLeverageDistrib.nextDouble();
-		learningRate = Firm.supplyManager.learningRateDistrib.nextDouble();
+				sm.rDEfficiencyDistrib.nextDouble());
+		targetLeverage = sm.targetLeverageDistrib.nextDouble();
+		learningRate = sm.learningRateDistrib.nextDouble();
+		lRExpon = log(learningRate) / log(2.0);
 
 		/*
 		 * Equity and Capital.
@@ -55,26 +77,27 @@ public class FirmState implements Cloneable {
 		 * Equity is chosen according to distribution, truncated so capital
 		 * won't be lower than minimum
 		 */
-		double minEquity = (Double) GetParameter("minimumCapital")
-				* (1 - targetLeverage);
+		double minEquity = params.minimumCapital * (1 - targetLeverage);
 		double equity = max(minEquity,
-				Firm.supplyManager.iniEquityDistrib.nextDouble());
+				sm.iniEquityDistrib.nextDouble());
 		capital = equity / (1 - targetLeverage);
 
 		/*
 		 * Read constant state variables
 		 */
-		capitalProductivity = (Double) GetParameter("capitalProductivity");
-		minVarCost = (Double) GetParameter("minVarCost");
+		capitalProductivity = params.capitalProductivity;
+		minVarCost = params.minVarCost;
 
 		/*
 		 * Initialize the remaining variables
 		 */
-		born = GetTickCount();
+		born = sm.market.tick;
 		debt = capital * targetLeverage;
 		rDPerPeriod = 0.0; // There is no R&D until it is planned
 		acumQ = 0.0;
+		acumQPow = pow(acumQ, 1.0 + lRExpon);
 		quantityPerPeriod = 0.0;
+		nextAcumQPow = Double.NaN;
 		profitPerPeriod = 0.0;
 		availableFundsFromOperationsPerPeriod = 0.0;
 		externalEquityAvailablePerPeriod = 0.0;
@@ -87,36 +110,135 @@ public class FirmState implements Cloneable {
 
 	}
 
-	@Override
-	public FirmState clone() {
-		try {
-			return (FirmState) super.clone();
-		} catch (CloneNotSupportedException e) {
-			e.printStackTrace();
-		}
-		return null;
+	/*
+	 * Copies every field of src into this state, so firms can keep reusing
+	 * the same buffers
+	 */
+	public void copyFrom(FirmState src) {
+		initialFUC = src.initialFUC;
+		rDEfficiency = src.rDEfficiency;
+		targetLeverage = src.targetLeverage;
+		maxExternalEquity = src.maxExternalEquity;
+		learningRate = src.learningRate;
+		capital = src.capital;
+		debt = src.debt;
+		firstUnitCost = src.firstUnitCost;
+		acumQ = src.acumQ;
+		acumProfit = src.acumProfit;
+		profitPerPeriod = src.profitPerPeriod;
+		quantityPerPeriod = src.quantityPerPeriod;
+		born = src.born;
+		rDPerPeriod = src.rDPerPeriod;
+		availableFundsFromOperationsPerPeriod = src.availableFundsFromOperationsPerPeriod;
+		externalEquityAvailablePerPeriod = src.externalEquityAvailablePerPeriod;
+		capitalProductivity = src.capitalProductivity;
+		minVarCost = src.minVarCost;
+		performance = src.performance;
+		lRExpon = src.lRExpon;
+		acumQPow = src.acumQPow;
+		nextAcumQPow = src.nextAcumQPow;
+	}
+
+	/*
+	 * Writes every field in binary, for checkpoints
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeDouble(initialFUC);
+		out.writeDouble(rDEfficiency);
+		out.writeDouble(targetLeverage);
+		out.writeDouble(maxExternalEquity);
+		out.writeDouble(learningRate);
+		out.writeDouble(capital);
+		out.writeDouble(debt);
+		out.writeDouble(firstUnitCost);
+		out.writeDouble(acumQ);
+		out.writeDouble(acumProfit);
+		out.writeDouble(profitPerPeriod);
+		out.writeDouble(quantityPerPeriod);
+		out.writeDouble(born);
+		out.writeDouble(rDPerPeriod);
+		out.writeDouble(availableFundsFromOperationsPerPeriod);
+		out.writeDouble(externalEquityAvailablePerPeriod);
+		out.writeDouble(capitalProductivity);
+		out.writeDouble(minVarCost);
+		out.writeDouble(performance);
+		out.writeDouble(lRExpon);
+		out.writeDouble(acumQPow);
+		out.writeDouble(nextAcumQPow);
+	}
+
+	/*
+	 * Reads every field as written by writeTo(DataOutput)
+	 */
+	void readFrom(DataInput in) throws IOException {
+		initialFUC = in.readDouble();
+		rDEfficiency = in.readDouble();
+		targetLeverage = in.readDouble();
+		maxExternalEquity = in.readDouble();
+		learningRate = in.readDouble();
+		capital = in.readDouble();
+		debt = in.readDouble();
+		firstUnitCost = in.readDouble();
+		acumQ = in.readDouble();
+		acumProfit = in.readDouble();
+		profitPerPeriod = in.readDouble();
+		quantityPerPeriod = in.readDouble();
+		born = in.readDouble();
+		rDPerPeriod = in.readDouble();
+		availableFundsFromOperationsPerPeriod = in.readDouble();
+		externalEquityAvailablePerPeriod = in.readDouble();
+		capitalProductivity = in.readDouble();
+		minVarCost = in.readDouble();
+		performance = in.readDouble();
+		lRExpon = in.readDouble();
+		acumQPow = in.readDouble();
+		nextAcumQPow = in.readDouble();
 	}
 
 	public double getLRExpon() {
-		return log(learningRate) / log(2.0);
+		return lRExpon;
+	}
+
+	public double getAcumQPow() {
+		return acumQPow;
+	}
+
+	public double getNextAcumQPow() {
+		if (Double.isNaN(nextAcumQPow))
+			nextAcumQPow = pow(acumQ + quantityPerPeriod, 1.0 + lRExpon);
+
+		return nextAcumQPow;
+	}
+
+	/*
+	 * Learning curve units of producing quantityPerPeriod, i.e. the variable
+	 * cost above the minimum per unit of first unit cost
+	 */
+	public double getLearningCurveQuantity() {
+		return getNextAcumQPow() - acumQPow;
 	}
 
-	public void resetExternalEquityAvailable() {
-		int periods = (Integer) GetParameter("periods");
+	/*
+	 * Adds the quantity produced in prev to its accumulated quantity. The
+	 * power needed is the one prev already has
+	 */
+	public void accumulateQuantity(FirmState prev) {
+		acumQ = prev.acumQ + prev.quantityPerPeriod;
+		acumQPow = prev.getNextAcumQPow();
+		nextAcumQPow = Double.NaN;
+	}
+
+	public void resetExternalEquityAvailable(boolean suddenStop) {
 		
-		if (Demand.isSS()) {
+		if (suddenStop) {
 			externalEquityAvailablePerPeriod = 0.0;
 		} else {
-			externalEquityAvailablePerPeriod = getMaxExternalEquity()
-			* getCapital() / periods;
+			externalEquityAvailablePerPeriod = params.maxExternalEquityPerPeriod
+			* getCapital();
 		}
 
 	}
 
-	private double getMaxExternalEquity() {
-		return (Double) GetParameter("maxExternalEquity");		
-	}
-
 	public double getDebtAvailableByNewEquity(double newEquity,
 			CashUsage cashUsage) {
 		return getDebtAvailable(newEquity, true, cashUsage);
@@ -157,9 +279,6 @@ public class FirmState implements Cloneable {
 			totalLeverage = availLeverage + getTargetLeverage() * newFunds;
 		}
 
-		if (Demand.isSS())
-			cashUsage = ONLY_CASH;
-
 		switch (cashUsage) {
 		case LEVERAGE:
 			newDebt = totalLeverage;
@@ -195,9 +314,7 @@ public class FirmState implements Cloneable {
 	// (Wright model)
 	public double getTotVarCostPerPeriod() {
 
-		return firstUnitCost
-				* (pow(getAcumQ() + getQuantityPerPeriod(), 1.0 + getLRExpon()) - pow(
-						getAcumQ(), 1.0 + getLRExpon())) + getMinVarCost()
+		return firstUnitCost * getLearningCurveQuantity() + getMinVarCost()
 				* getQuantityPerPeriod();
 
 	}
@@ -249,7 +366,7 @@ public class FirmState implements Cloneable {
 	}
 
 	public double getWACC() {
-		return (Double) GetParameter("wACC");
+		return params.wACC;
 	}
 
 	public double getAcumQ() {
@@ -273,11 +390,11 @@ public class FirmState implements Cloneable {
 	}
 
 	public double getCapitalProductivityPerPeriod() {
-		return getCapitalProductivity() / (Integer) GetParameter("periods");
+		return getCapitalProductivity() / params.periods;
 	}
 
 	public double getCostOfDebt() {
-		return (Double) GetParameter("costOfDebt");
+		return params.costOfDebt;
 	}
 
 	// It is assumed M&M, ie. WACC is constant
@@ -300,36 +417,31 @@ public class FirmState implements Cloneable {
 	}
 
 	public double getInterestPerPeriod() {
-		return getCostOfDebt() / (Integer) GetParameter("periods") * getDebt();
+		return params.costOfDebtPerPeriod * getDebt();
 	}
 
 	public double getExpectedEquityRetributionPerPeriod() {
-		return getCostOfEquity() * getEquity()
-				/ (Integer) GetParameter("periods");
+		return getCostOfEquity() * getEquity() / params.periods;
 	}
 
 	public double getExpectedCapitalRetributionPerPeriod() {
-		return getWACC() * getCapital() / (Integer) GetParameter("periods");
+		return params.wACCPerPeriod * getCapital();
 	}
 
 	public double getDepreciationPerPeriod() {
-		return (Double) GetParameter("depreciation") * getCapital()
-				/ (Integer) GetParameter("periods");
+		return params.depreciationPerPeriod * getCapital();
 	}
 
 	public double getROE() {
-		return getProfitPerPeriod() * (Integer) GetParameter("periods")
-				/ getEquity();
+		return getProfitPerPeriod() * params.periods / getEquity();
 	}
 
 	public double getROI() {
-		return getEBITPerPeriod() * (Integer) GetParameter("periods")
-				/ getCapital();
+		return getEBITPerPeriod() * params.periods / getCapital();
 	}
 
 	public double getRONA() {
-		return getEBITPerPeriod() * (Integer) GetParameter("periods")
-				/ getAssets();
+		return getEBITPerPeriod() * params.periods / getAssets();
 	}
 
 	public double getPerformance() {
@@ -341,7 +453,7 @@ public class FirmState implements Cloneable {
 	}
 
 	public double getBornInYears() {
-		return born / (Integer) GetParameter("periods");
+		return born / params.periods;
 	}
 
 	public void setBorn(double born) {
@@ -350,6 +462,8 @@ public class FirmState implements Cloneable {
 
 	public void setAcumQ(double acumQ) {
 		this.acumQ = acumQ;
+		acumQPow = pow(acumQ, 1.0 + lRExpon);
+		nextAcumQPow = Double.NaN;
 	}
 
 	public void setAcumProfit(double acumProfit) {
@@ -388,6 +502,11 @@ public class FirmState implements Cloneable {
 		return quantityPerPeriod;
 	}
 
+	public void setQuantityPerPeriod(double quantityPerPeriod) {
+		this.quantityPerPeriod = quantityPerPeriod;
+		nextAcumQPow = Double.NaN;
+	}
+
 	public double getRDPerPeriod() {
 		return rDPerPeriod;
 	}
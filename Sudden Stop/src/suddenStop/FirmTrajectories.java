@@ -0,0 +1,84 @@
+package suddenStop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Splits the rows per firm of each tick into the trajectory of every firm,
+ * encoded as the ticks come. A block of a trajectory is handed to writeBlock
+ * when it has BLOCK_POINTS rows and when the firm exits, so only the open
+ * blocks of the firms alive are kept in memory.
+ */
+abstract class FirmTrajectories {
+
+	static final int BLOCK_POINTS = 128;
+
+	private final int columns;
+
+	private Map<Long, TrajectoryEncoder> open = new HashMap<Long, TrajectoryEncoder>();
+	private List<TrajectoryEncoder> free = new ArrayList<TrajectoryEncoder>();
+
+	FirmTrajectories(int columns) {
+		this.columns = columns;
+	}
+
+	void add(TickRecord r) throws IOException {
+
+		for (int i = 0; i < r.firms; i++) {
+			TrajectoryEncoder e = encoder(r.firmIDs[i]);
+			e.add(r.tick, r.firmData, i * columns);
+			if (e.points == BLOCK_POINTS) {
+				writeBlock(e);
+				e.reset(e.firm);
+			}
+		}
+
+		// A firm that exits may have a last row in this tick
+		for (int i = 0; i < r.exits; i++) {
+			TrajectoryEncoder e = open.remove(r.exitFirmIDs[i]);
+			if (e != null) {
+				if (e.points > 0)
+					writeBlock(e);
+				free.add(e);
+			}
+		}
+
+	}
+
+	/*
+	 * Writes the blocks of the firms still alive, in firm order
+	 */
+	void finish() throws IOException {
+		List<Long> firms = new ArrayList<Long>(open.keySet());
+		Collections.sort(firms);
+
+		for (Long f : firms) {
+			TrajectoryEncoder e = open.get(f);
+			if (e.points > 0)
+				writeBlock(e);
+		}
+
+		open.clear();
+	}
+
+	protected abstract void writeBlock(TrajectoryEncoder block)
+			throws IOException;
+
+	private TrajectoryEncoder encoder(long firm) {
+		TrajectoryEncoder e = open.get(firm);
+
+		if (e == null) {
+			e = free.isEmpty() ? new TrajectoryEncoder(columns) : free
+					.remove(free.size() - 1);
+			e.reset(firm);
+			open.put(firm, e);
+		}
+
+		return e;
+	}
+
+}
@@ -0,0 +1,174 @@
+package suddenStop;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Runs the model without Repast:
+ * 
+ * HeadlessKernel [-threads <n>] [-data] [-fork] [-from <checkpoint>]
+ * [-save <ticks> <checkpoint>] [-scenarios <dir>] <parameters.xml>
+ * [<batch sweep file>]
+ * 
+ * With only parameters.xml it makes one run with the default values.
+ * Otherwise it makes every run of the sweep, n at a time (by default as many
+ * as processors). With -data the data is saved to the output sink set in
+ * the parameters (outputSink), as in Repast batch runs. With -fork runs
+ * that only differ in the sudden stop share the ticks before it, see
+ * BatchExecutor.
+ * 
+ * With -from every run starts from the checkpoint, going on with its own
+ * parameters, which may only differ from the saved ones in how the run is
+ * made and saved, its end, and a sudden stop that hasn't started yet. With
+ * -data the ticks after the checkpoint are saved. With -save a single run
+ * is saved every given ticks, replacing the checkpoint each time, and at the
+ * end.
+ * 
+ * With -scenarios the market data of the runs is averaged over the seeds of
+ * each scenario as they finish, and the curves of each scenario are saved
+ * to dir when its last run is done, see ScenarioAggregator.
+ */
+public class HeadlessKernel {
+
+	private static final String USAGE = "Usage: HeadlessKernel [-threads <n>] [-data] [-fork] [-from <checkpoint>] "
+			+ "[-save <ticks> <checkpoint>] [-scenarios <dir>] <parameters.xml> [<batch sweep file>]";
+
+	public static void main(String[] args) {
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean data = false;
+		boolean fork = false;
+		File from = null;
+		double saveEvery = 0;
+		File saveTo = null;
+		File scenarios = null;
+		List<String> files = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-data")) {
+				data = true;
+			} else if (args[i].equals("-fork")) {
+				fork = true;
+			} else if (args[i].equals("-from") && i + 1 < args.length) {
+				from = new File(args[++i]);
+			} else if (args[i].equals("-save") && i + 2 < args.length) {
+				saveEvery = Double.parseDouble(args[++i]);
+				saveTo = new File(args[++i]);
+			} else if (args[i].equals("-scenarios") && i + 1 < args.length) {
+				scenarios = new File(args[++i]);
+			} else {
+				files.add(args[i]);
+			}
+		}
+
+		if (files.size() < 1 || files.size() > 2 || threads < 1
+				|| (from != null && fork)
+				|| (saveTo != null && (files.size() > 1 || fork))
+				|| (saveTo != null && saveEvery <= 0)
+				|| (saveTo != null && scenarios != null)) {
+			System.err.println(USAGE);
+			System.exit(-1);
+		}
+
+		List<Map<String, Object>> runs;
+		try {
+			Map<String, Object> defaults = ParameterFile
+					.readDefaults(new File(files.get(0)));
+
+			if (files.size() == 2) {
+				runs = ParameterFile.readSweep(new File(files.get(1)),
+						defaults);
+			} else {
+				runs = new ArrayList<Map<String, Object>>();
+				runs.add(defaults);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Parameters could not be read");
+			System.exit(-1);
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+
+		try {
+			// The simulation info is taken from the first run, as in Repast
+			OutputSink sink = null;
+			if (data) {
+				ModelParameters first = new ModelParameters(runs.get(0));
+				sink = OutputSinks.create(first);
+				sink.open(first);
+			}
+
+			try {
+				if (saveTo != null) {
+					System.out.println(runSaving(new ModelParameters(runs
+							.get(0)), sink, from, saveEvery, saveTo));
+					return;
+				}
+
+				BatchExecutor executor = new BatchExecutor(threads, fork);
+				if (from != null)
+					executor.startFrom(from);
+				ScenarioAggregator aggregator = null;
+				if (scenarios != null) {
+					aggregator = new ScenarioAggregator(runs);
+					aggregator.saveTo(scenarios);
+					executor.aggregateInto(aggregator);
+				}
+
+				for (BatchExecutor.Result r : executor.run(runs, sink)) {
+					System.out.println(r);
+				}
+				if (aggregator != null) {
+					for (ScenarioAggregator.Scenario s : aggregator
+							.scenarios())
+						System.out.println(s);
+				}
+			} finally {
+				if (sink != null)
+					sink.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Error trying to save or restore the runs");
+			System.exit(-1);
+		}
+
+		System.out.println(runs.size() + " runs in "
+				+ (System.currentTimeMillis() - start) + " ms");
+
+	}
+
+	private static BatchExecutor.Result runSaving(ModelParameters params,
+			OutputSink sink, File from, double saveEvery, File saveTo)
+			throws IOException {
+
+		long start = System.currentTimeMillis();
+
+		Simulation s;
+		if (from != null)
+			s = Checkpoint.restore(from, params, sink, 1);
+		else if (sink != null)
+			s = new Simulation(params, sink, 1);
+		else
+			s = new Simulation(params);
+
+		while (!s.isDone()) {
+			s.runUntil(s.getTick() + saveEvery);
+			Checkpoint.save(s, saveTo);
+		}
+
+		s.end();
+
+		return new BatchExecutor.Result(1, s, System.currentTimeMillis()
+				- start);
+
+	}
+
+}
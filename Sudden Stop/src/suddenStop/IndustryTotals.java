@@ -0,0 +1,51 @@
+package suddenStop;
+
+/*
+ * Running totals of the firms alive. They are summed again when firms move
+ * to their next state and updated on each birth and death in between, so
+ * nobody needs to walk the population to get them.
+ * 
+ * Firms also change their capital when they respond to demand, so capital
+ * is summed again then, before the exits take it out.
+ */
+public class IndustryTotals {
+
+	double quantityPerPeriod = 0.0;
+	double capital = 0.0;
+	int firms = 0;
+
+	void set(double quantityPerPeriod, double capital, int firms) {
+		this.quantityPerPeriod = quantityPerPeriod;
+		this.capital = capital;
+		this.firms = firms;
+	}
+
+	void setCapital(double capital) {
+		this.capital = capital;
+	}
+
+	void add(FirmState st) {
+		quantityPerPeriod += st.getQuantityPerPeriod();
+		capital += st.getCapital();
+		firms++;
+	}
+
+	void remove(FirmState st) {
+		quantityPerPeriod -= st.getQuantityPerPeriod();
+		capital -= st.getCapital();
+		firms--;
+	}
+
+	public double getQuantityPerPeriod() {
+		return quantityPerPeriod;
+	}
+
+	public double getCapital() {
+		return capital;
+	}
+
+	public int getFirms() {
+		return firms;
+	}
+
+}
@@ -0,0 +1,51 @@
+package suddenStop;
+
+import static java.lang.Math.pow;
+
+/*
+ * Demand side values that are constant during a tick. SupplyManager builds
+ * one at the start of each step, so firms read fields instead of evaluating
+ * the sudden stop window on every call.
+ */
+public class MarketConditions {
+
+	public final double tick;
+
+	public final boolean suddenStop;
+	public final double sSMagnitude;
+
+	// pow(1 + demandShift, time / elasticity)
+	public final double demandShiftFactor;
+	public final double priceOfSubstitute;
+
+	final double demandParameter;
+	final double inverseElasticity;
+	final int periods;
+
+	public MarketConditions(ModelParameters p, double tick) {
+
+		this.tick = tick;
+
+		suddenStop = Demand.isSS(p, tick);
+		sSMagnitude = suddenStop ? p.suddenStopMagnitude : 0.0;
+
+		double time = tick / p.periods;
+		demandShiftFactor = pow(1.0 + p.demandShift, time
+				/ p.demandElasticity);
+		priceOfSubstitute = p.priceOfSubstitute;
+
+		demandParameter = p.demandParameter;
+		inverseElasticity = 1.0 / p.demandElasticity;
+		periods = p.periods;
+
+	}
+
+	public boolean isSS() {
+		return suddenStop;
+	}
+
+	public double getSSMagnitude() {
+		return sSMagnitude;
+	}
+
+}
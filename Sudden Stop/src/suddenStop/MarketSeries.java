@@ -0,0 +1,70 @@
+package suddenStop;
+
+import java.util.Arrays;
+
+/*
+ * The market data of a run tick by tick, kept in memory so runs can be
+ * aggregated without saving them. Ticks before the start of a run restored
+ * from a checkpoint are missing.
+ */
+public class MarketSeries {
+
+	public static final String[] NAMES = { "Price", "Firms", "Births",
+			"Exits", "TotalQuantity" };
+	public static final int SERIES = NAMES.length;
+
+	// Ticks are 1, 2, ... so tick t is at t - 1
+	private double[][] values = new double[SERIES][];
+	private boolean[] recorded;
+	private int ticks = 0;
+
+	MarketSeries(int capacity) {
+		capacity = Math.max(1, capacity);
+		for (int s = 0; s < SERIES; s++)
+			values[s] = new double[capacity];
+		recorded = new boolean[capacity];
+	}
+
+	MarketSeries(MarketSeries src) {
+		for (int s = 0; s < SERIES; s++)
+			values[s] = src.values[s].clone();
+		recorded = src.recorded.clone();
+		ticks = src.ticks;
+	}
+
+	void record(double tick, SupplyManager sm) {
+		int t = (int) tick - 1;
+
+		if (t >= recorded.length) {
+			int capacity = Math.max(t + 1, 2 * recorded.length);
+			for (int s = 0; s < SERIES; s++)
+				values[s] = Arrays.copyOf(values[s], capacity);
+			recorded = Arrays.copyOf(recorded, capacity);
+		}
+
+		values[0][t] = sm.price;
+		values[1][t] = sm.totalFirms;
+		values[2][t] = sm.bornFirms;
+		values[3][t] = sm.dead;
+		values[4][t] = sm.totalQuantityPerPeriod;
+		recorded[t] = true;
+
+		ticks = Math.max(ticks, t + 1);
+	}
+
+	/*
+	 * The last tick recorded
+	 */
+	public int ticks() {
+		return ticks;
+	}
+
+	public boolean isRecorded(int tick) {
+		return tick >= 1 && tick <= ticks && recorded[tick - 1];
+	}
+
+	public double get(int series, int tick) {
+		return values[series][tick - 1];
+	}
+
+}
@@ -0,0 +1,290 @@
+package suddenStop;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import repast.simphony.engine.environment.RunEnvironment;
+import repast.simphony.parameter.Parameters;
+
+/*
+ * Immutable snapshot of the parameters of a run. It is built once when the
+ * run starts, so the model reads plain fields instead of looking parameters
+ * up on every call.
+ *
+ * Values that are only used divided by periods are also kept per period.
+ * 
+ * The parameters added after the first version of the model take their
+ * default of parameters.xml when they are missing, so older parameter files
+ * still run. Any other missing parameter is an error naming it.
+ */
+public class ModelParameters {
+
+	/*
+	 * Parameters that describe the simulation, or say how runs are made or
+	 * where and how their data is saved. Runs that only differ in them give
+	 * the same results
+	 */
+	private static final Set<String> NOT_MODEL = new HashSet<String>(Arrays
+			.asList("simDescription", "SQLServer", "database",
+					"workerThreads", "sqlBatchSize", "outputQueueCapacity",
+					"outputSink", "outputDirectory", "firmColumns",
+					"aggregateOnly", "sketchColumns", "sketchK",
+					"firmSampleInterval", "firmSampleWindow",
+					"firmTrajectories"));
+
+	private final Map<String, Object> values;
+
+	public final int periods;
+	public final double stopAt;
+
+	// Demand
+	public final double priceOfSubstitute;
+	public final double demandParameter;
+	public final double demandElasticity;
+	public final double demandShift;
+	public final double supplyElasticity;
+
+	// Sudden stop
+	public final int suddenStopStart;
+	public final double suddenStopDuration;
+	public final double suddenStopMagnitude;
+	public final double suddenStopStartTick;
+	public final double suddenStopEndTick;
+
+	// Entry
+	public final double entrantsMean;
+	public final double entrantsStdDev;
+	public final double firstUnitCostMean;
+	public final double firstUnitCostStdDev;
+	public final double iniEquityMean;
+	public final double iniEquityStdDev;
+	public final double rDEfficiencyMin;
+	public final double rDEfficiencyMax;
+	public final double leverageMin;
+	public final double leverageMax;
+	public final double learningRateMin;
+	public final double learningRateMax;
+	public final double innovationErrorStdDev;
+
+	// Firms
+	public final double minimumCapital;
+	public final double capitalProductivity;
+	public final double minVarCost;
+	public final double maxExternalEquity;
+	public final double investmentParam;
+	public final double performanceWeight;
+	public final double wACC;
+	public final double costOfDebt;
+	public final double depreciation;
+
+	public final double wACCPerPeriod;
+	public final double costOfDebtPerPeriod;
+	public final double depreciationPerPeriod;
+	public final double capitalProductivityPerPeriod;
+	public final double maxExternalEquityPerPeriod;
+
+	/*
+	 * Performance is smoothed as performanceKeep * performance + roiWeight *
+	 * ROI
+	 */
+	public final double performanceKeep;
+	public final double performanceROIWeight;
+
+	public final int[] timeCohortLimits;
+
+	// Execution
+	public final int workerThreads;
+
+	// Output
+	public final int outputQueueCapacity;
+	public final int sqlBatchSize;
+	public final FirmColumn[] firmColumns;
+	// Only statistics by bucket instead of rows per firm
+	public final boolean aggregateOnly;
+	// Columns whose distribution is sketched each tick, and the sketch size
+	public final FirmColumn[] sketchColumns;
+	public final int sketchK;
+	/*
+	 * Rows per firm are saved on ticks multiple of firmSampleInterval, and on
+	 * every tick from firmSampleFromTick to firmSampleToTick, the sudden stop
+	 * widened by firmSampleWindow years on each side
+	 */
+	public final int firmSampleInterval;
+	public final double firmSampleFromTick;
+	public final double firmSampleToTick;
+	// Rows per firm as compressed trajectories instead of a table
+	public final boolean firmTrajectories;
+
+	public ModelParameters(Map<String, Object> values) {
+
+		this.values = Collections
+				.unmodifiableMap(new TreeMap<String, Object>(values));
+
+		periods = getInt("periods");
+		stopAt = getDouble("stopAt");
+
+		priceOfSubstitute = getDouble("priceOfSubstitute");
+		demandParameter = getDouble("demandParameter");
+		demandElasticity = getDouble("demandElasticity");
+		demandShift = getDouble("demandShift");
+		supplyElasticity = getDouble("supplyElasticity");
+
+		suddenStopStart = getInt("suddenStopStart");
+		suddenStopDuration = getDouble("suddenStopDuration");
+		suddenStopMagnitude = getDouble("suddenStopMagnitude");
+		suddenStopStartTick = suddenStopStart * periods;
+		suddenStopEndTick = suddenStopStartTick + suddenStopDuration
+				* periods;
+
+		entrantsMean = getDouble("entrantsMean");
+		entrantsStdDev = getDouble("entrantsStdDev");
+		firstUnitCostMean = getDouble("firstUnitCostMean");
+		firstUnitCostStdDev = getDouble("firstUnitCostStdDev");
+		iniEquityMean = getDouble("iniEquityMean");
+		iniEquityStdDev = getDouble("iniEquityStdDev");
+		rDEfficiencyMin = getDouble("rDEfficiencyMin");
+		rDEfficiencyMax = getDouble("rDEfficiencyMax");
+		leverageMin = getDouble("leverageMin");
+		leverageMax = getDouble("leverageMax");
+		learningRateMin = getDouble("learningRateMin");
+		learningRateMax = getDouble("learningRateMax");
+		innovationErrorStdDev = getDouble("innovationErrorStdDev");
+
+		minimumCapital = getDouble("minimumCapital");
+		capitalProductivity = getDouble("capitalProductivity");
+		minVarCost = getDouble("minVarCost");
+		maxExternalEquity = getDouble("maxExternalEquity");
+		investmentParam = getDouble("investmentParam");
+		performanceWeight = getDouble("performanceWeight");
+		wACC = getDouble("wACC");
+		costOfDebt = getDouble("costOfDebt");
+		depreciation = getDouble("depreciation");
+
+		wACCPerPeriod = wACC / periods;
+		costOfDebtPerPeriod = costOfDebt / periods;
+		depreciationPerPeriod = depreciation / periods;
+		capitalProductivityPerPeriod = capitalProductivity / periods;
+		maxExternalEquityPerPeriod = maxExternalEquity / periods;
+
+		performanceROIWeight = (1 - performanceWeight) / periods;
+		performanceKeep = 1 - performanceROIWeight;
+
+		/* Read Time Cohorts limits */
+		String[] tmp = required("timeCohorts").toString().split(";");
+		timeCohortLimits = new int[tmp.length];
+		for (int i = 0; i < tmp.length; i++) {
+			timeCohortLimits[i] = Integer.parseInt(tmp[i].trim());
+		}
+
+		workerThreads = Math.max(1, getInt("workerThreads", 1));
+
+		outputQueueCapacity = Math.max(1, getInt("outputQueueCapacity", 64));
+		sqlBatchSize = Math.max(1, getInt("sqlBatchSize", 1000));
+		firmColumns = FirmColumn.parse(getString("firmColumns"));
+		aggregateOnly = getBoolean("aggregateOnly", false);
+		sketchColumns = FirmColumn.parseNames(getString("sketchColumns"));
+		sketchK = getInt("sketchK", QuantileSketch.DEFAULT_K);
+		firmSampleInterval = Math.max(1, getInt("firmSampleInterval", 1));
+		double window = getDouble("firmSampleWindow", 0.0) * periods;
+		firmSampleFromTick = suddenStopStartTick - window;
+		firmSampleToTick = suddenStopEndTick + window;
+		firmTrajectories = getBoolean("firmTrajectories", false);
+
+	}
+
+	/*
+	 * Takes the parameters of the current Repast run
+	 */
+	public static ModelParameters fromRunEnvironment() {
+		Parameters p = RunEnvironment.getInstance().getParameters();
+		Map<String, Object> values = new TreeMap<String, Object>();
+
+		for (String name : p.getSchema().parameterNames()) {
+			values.put(name, p.getValue(name));
+		}
+
+		return new ModelParameters(values);
+	}
+
+	/*
+	 * Every parameter of the run, sorted by name
+	 */
+	public Set<String> names() {
+		return values.keySet();
+	}
+
+	public Object get(String name) {
+		return values.get(name);
+	}
+
+	/*
+	 * Whether name has an effect on the results of a run
+	 */
+	public static boolean isModelParameter(String name) {
+		return !NOT_MODEL.contains(name);
+	}
+
+	/*
+	 * The value as a string, or null if it is missing
+	 */
+	public String getString(String name) {
+		Object v = values.get(name);
+		return (v != null) ? v.toString() : null;
+	}
+
+	private double getDouble(String name) {
+		return number(name, required(name)).doubleValue();
+	}
+
+	private int getInt(String name) {
+		return number(name, required(name)).intValue();
+	}
+
+	private double getDouble(String name, double byDefault) {
+		Object v = values.get(name);
+		return (v != null) ? number(name, v).doubleValue() : byDefault;
+	}
+
+	private int getInt(String name, int byDefault) {
+		Object v = values.get(name);
+		return (v != null) ? number(name, v).intValue() : byDefault;
+	}
+
+	private boolean getBoolean(String name, boolean byDefault) {
+		Object v = values.get(name);
+		if (v == null)
+			return byDefault;
+		if (v instanceof Boolean)
+			return (Boolean) v;
+		if (v.toString().equalsIgnoreCase("true"))
+			return true;
+		if (v.toString().equalsIgnoreCase("false"))
+			return false;
+		throw new IllegalArgumentException("Parameter " + name
+				+ " should be true or false, not " + v);
+	}
+
+	private Object required(String name) {
+		Object v = values.get(name);
+		if (v == null)
+			throw new IllegalArgumentException("Parameter " + name
+					+ " is missing");
+		return v;
+	}
+
+	private static Number number(String name, Object v) {
+		if (v instanceof Number)
+			return (Number) v;
+		try {
+			return Double.valueOf(v.toString().trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter " + name
+					+ " should be a number, not " + v);
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package suddenStop;
+
+import static repast.simphony.essentials.RepastEssentials.RemoveAgentFromModel;
+
+import java.util.Iterator;
+
+import repast.simphony.context.Context;
+
+/*
+ * Each firm is a Firm object kept in a FirmRegistry. When a GUI is attached
+ * firms are also agents in the Repast context, so they can be probed and
+ * grouped in cohorts. Otherwise the context never sees them.
+ */
+public class ObjectFirmPopulation implements FirmPopulation {
+
+	private FirmRegistry registry;
+	private Context<Object> guiContext;
+	private FirmPhaseRunner runner;
+	private IndustryTotals totals;
+
+	// Reused to screen entrants
+	private Firm prototype;
+	private FirmState scratch;
+
+	/*
+	 * guiContext is null when there is no GUI
+	 */
+	public ObjectFirmPopulation(SupplyManager supplyManager,
+			FirmRegistry registry, Context<Object> guiContext,
+			FirmPhaseRunner runner, IndustryTotals totals) {
+		this.registry = registry;
+		this.guiContext = guiContext;
+		this.runner = runner;
+		this.totals = totals;
+		prototype = new Firm(supplyManager);
+		scratch = new FirmState(supplyManager.params);
+	}
+
+	public int size() {
+		return registry.size();
+	}
+
+	public void moveToNextState(final double[] innovationErrors) {
+		double[] sums = new double[2];
+
+		runner.sum(registry.size(), sums, new FirmPhaseRunner.SumPhase() {
+			public void run(int from, int to, double[] sums) {
+				for (int i = from; i < to; i++) {
+					Firm f = registry.get(i);
+					f.moveToNextState(innovationErrors[i]);
+					sums[0] += f.currentState.getQuantityPerPeriod();
+					sums[1] += f.currentState.getCapital();
+				}
+			}
+		});
+
+		totals.set(sums[0], sums[1], registry.size());
+	}
+
+	public boolean addEntrant(double price) {
+
+		prototype.drawEntrant();
+
+		// Only profitable entrants become firms
+		if (!prototype.estimateResponseToDemand(price, scratch))
+			return false;
+
+		Firm f = new Firm(guiContext, prototype);
+		registry.add(f);
+		totals.add(f.currentState);
+		f.supplyManager.firmBorn(f);
+
+		return true;
+
+	}
+
+	public void processResponseToDemand(final double price) {
+		double[] sums = new double[1];
+
+		runner.sum(registry.size(), sums, new FirmPhaseRunner.SumPhase() {
+			public void run(int from, int to, double[] sums) {
+				for (int i = from; i < to; i++) {
+					Firm f = registry.get(i);
+					f.processResponseToDemand(price);
+					sums[0] += f.currentState.getCapital();
+				}
+			}
+		});
+
+		totals.setCapital(sums[0]);
+	}
+
+	public int killToBeKilledFirms() {
+		int killed = 0;
+		int i = 0;
+
+		while (i < registry.size()) {
+			if (registry.get(i).isToBeKilled()) {
+				Firm f = registry.remove(i);
+				f.supplyManager.firmExited(f);
+				totals.remove(f.currentState);
+				if (guiContext != null) {
+					f.killShadowFirms();
+					RemoveAgentFromModel(f);
+				}
+				killed++;
+			} else {
+				i++;
+			}
+		}
+
+		return killed;
+
+	}
+
+	public void planNextYear(final double price) {
+		runner.run(registry.size(), new FirmPhaseRunner.Phase() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++)
+					registry.get(i).planNextYear(price);
+			}
+		});
+	}
+
+	public void addCopy(Firm f) {
+		registry.add(new Firm(f.supplyManager, f));
+	}
+
+	public FirmPopulation copy(SupplyManager supplyManager,
+			FirmPhaseRunner runner, IndustryTotals totals) {
+		FirmRegistry r = new FirmRegistry();
+
+		for (Firm f : registry)
+			r.add(new Firm(supplyManager, f));
+
+		return new ObjectFirmPopulation(supplyManager, r, null, runner,
+				totals);
+	}
+
+	public Iterator<Firm> iterator() {
+		return registry.iterator();
+	}
+
+}
@@ -0,0 +1,35 @@
+package suddenStop;
+
+import java.io.IOException;
+
+/*
+ * Where the data of a simulation is saved. A sink is opened once with the
+ * info of the whole simulation, and then each run opens its own RunOutput,
+ * so runs can write at the same time.
+ * 
+ * The logical tables are Simulations, SimulationParameters, RunParameters,
+ * ParameterSets, MarketData, IndividualFirms, IndividualFirmsPerTick and
+ * FirmExits. ParameterSets holds each configuration once, keyed by the hash
+ * of its ParameterSet, and RunParameters refers to it.
+ */
+public interface OutputSink {
+
+	/*
+	 * Saves the simulation info and its parameters. It is called before the
+	 * first run, with its parameters
+	 */
+	public void open(ModelParameters params) throws IOException;
+
+	/*
+	 * Saves the parameters of run and returns where to write its data
+	 */
+	public RunOutput openRun(int run, ModelParameters params)
+			throws IOException;
+
+	/*
+	 * Releases the sink when the last run is done. The outputs of the runs
+	 * are closed before
+	 */
+	public void close() throws IOException;
+
+}
@@ -0,0 +1,46 @@
+package suddenStop;
+
+/*
+ * Creates the sink set in the parameters, and holds what every sink needs to
+ * know about them
+ */
+public class OutputSinks {
+
+	public static final String FILES = "files";
+	public static final String COLUMNAR = "columnar";
+	public static final String SQL_SERVER = "sqlserver";
+
+	/*
+	 * outputSink is files (the default), columnar or sqlserver
+	 */
+	public static OutputSink create(ModelParameters params) {
+		String type = params.getString("outputSink");
+
+		if (type == null || type.equals(FILES))
+			return new FileSink(params.getString("outputDirectory"));
+		else if (type.equals(COLUMNAR))
+			return new ColumnarSink(params.getString("outputDirectory"));
+		else if (type.equals(SQL_SERVER))
+			return new SQLServerSink(params.getString("SQLServer"), params
+					.getString("database"));
+		else
+			throw new IllegalArgumentException("Unknown output sink " + type);
+	}
+
+	/*
+	 * Parameters saved as Simulation data instead of as parameters
+	 */
+	static boolean isSimData(String paramName) {
+		return paramName.equals("simDescription");
+	}
+
+	/*
+	 * Parameters saved in RunParameters instead of SimulationParameters
+	 */
+	static boolean isRunParam(String paramName) {
+		return (paramName.equals("suddenStopMagnitude")
+				|| paramName.equals("suddenStopStart") || paramName
+					.equals("randomSeed"));
+	}
+
+}
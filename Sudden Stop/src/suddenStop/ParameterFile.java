@@ -0,0 +1,183 @@
+package suddenStop;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/*
+ * Reads Repast parameter files without the Repast runtime: the defaults in
+ * parameters.xml and the runs of a batch sweep file.
+ */
+public class ParameterFile {
+
+	private static final String NULL_VALUE = "__NULL__";
+
+	/*
+	 * Returns the default value of every parameter in a parameters.xml file
+	 */
+	public static Map<String, Object> readDefaults(File parametersXml)
+			throws IOException {
+
+		Map<String, Object> values = new TreeMap<String, Object>();
+
+		for (Element e : children(parse(parametersXml).getDocumentElement())) {
+			values.put(e.getAttribute("name"),
+					convert(e.getAttribute("type"),
+							e.getAttribute("defaultValue")));
+		}
+
+		return values;
+	}
+
+	/*
+	 * Returns the parameters of every run of a batch sweep file, in the order
+	 * Repast runs them. Parameters not in the sweep take their value from
+	 * defaults.
+	 *
+	 * A parameter is iterated for each value of the parameters enclosing it,
+	 * and after the ones before it at the same level. The whole sweep is
+	 * repeated as many times as its runs attribute says.
+	 */
+	public static List<Map<String, Object>> readSweep(File sweepXml,
+			Map<String, Object> defaults) throws IOException {
+
+		Element sweep = parse(sweepXml).getDocumentElement();
+
+		List<Map<String, Object>> combinations = new ArrayList<Map<String, Object>>();
+		expand(children(sweep), new HashMap<String, Object>(), combinations);
+
+		int repeat = 1;
+		if (sweep.hasAttribute("runs"))
+			repeat = Integer.parseInt(sweep.getAttribute("runs").trim());
+
+		List<Map<String, Object>> runs = new ArrayList<Map<String, Object>>();
+		for (int r = 0; r < repeat; r++) {
+			for (Map<String, Object> c : combinations) {
+				Map<String, Object> run = new TreeMap<String, Object>(defaults);
+				run.putAll(c);
+				runs.add(run);
+			}
+		}
+
+		return runs;
+	}
+
+	private static void expand(List<Element> pending,
+			Map<String, Object> current, List<Map<String, Object>> out) {
+
+		if (pending.isEmpty()) {
+			out.add(new HashMap<String, Object>(current));
+			return;
+		}
+
+		Element p = pending.get(0);
+
+		// Enclosed parameters go before the remaining ones at this level
+		List<Element> next = children(p);
+		next.addAll(pending.subList(1, pending.size()));
+
+		String name = p.getAttribute("name");
+		for (Object value : values(p)) {
+			current.put(name, value);
+			expand(next, current, out);
+		}
+		current.remove(name);
+
+	}
+
+	private static List<Object> values(Element p) {
+		List<Object> values = new ArrayList<Object>();
+		String type = p.getAttribute("type");
+
+		if (type.equals("constant")) {
+			values.add(convert(p.getAttribute("constant_type"),
+					p.getAttribute("value")));
+
+		} else if (type.equals("list")) {
+			for (String v : p.getAttribute("values").trim().split("\\s+")) {
+				values.add(convert(p.getAttribute("value_type"), v));
+			}
+
+		} else if (type.equals("number")) {
+			String numberType = p.getAttribute("number_type");
+			double start = Double.parseDouble(p.getAttribute("start"));
+			double end = Double.parseDouble(p.getAttribute("end"));
+			double step = Double.parseDouble(p.getAttribute("step"));
+
+			// Counted, so adding up the step doesn't miss the end
+			long n = (long) Math.floor((end - start) / step + 1e-9) + 1;
+			for (long i = 0; i < n; i++) {
+				values.add(convert(numberType,
+						Double.toString(start + i * step)));
+			}
+
+		} else {
+			throw new IllegalArgumentException("Unknown parameter type "
+					+ type + " for " + p.getAttribute("name"));
+		}
+
+		return values;
+	}
+
+	static Object convert(String type, String value) {
+
+		if (value == null || value.equals(NULL_VALUE))
+			return null;
+
+		value = value.trim();
+
+		if (type.equals("int") || type.equals("java.lang.Integer"))
+			return (int) Double.parseDouble(value);
+		else if (type.equals("long") || type.equals("java.lang.Long"))
+			return (long) Double.parseDouble(value);
+		else if (type.equals("double") || type.equals("java.lang.Double"))
+			return Double.parseDouble(value);
+		else if (type.equals("float") || type.equals("java.lang.Float"))
+			return Float.parseFloat(value);
+		else if (type.equals("boolean") || type.equals("java.lang.Boolean"))
+			return Boolean.parseBoolean(value);
+		else
+			return value;
+
+	}
+
+	private static Document parse(File f) throws IOException {
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.parse(f);
+		} catch (ParserConfigurationException e) {
+			throw new IOException(e.getMessage());
+		} catch (SAXException e) {
+			throw new IOException("Error parsing " + f + ": "
+					+ e.getMessage());
+		}
+	}
+
+	private static List<Element> children(Element e) {
+		List<Element> children = new ArrayList<Element>();
+		NodeList nodes = e.getChildNodes();
+
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Node n = nodes.item(i);
+			if (n.getNodeType() == Node.ELEMENT_NODE
+					&& n.getNodeName().equals("parameter"))
+				children.add((Element) n);
+		}
+
+		return children;
+	}
+
+}
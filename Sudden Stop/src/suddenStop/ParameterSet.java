@@ -0,0 +1,127 @@
+package suddenStop;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * The configuration of a run: every model parameter but the ones saved in
+ * RunParameters. Parameters that only say how the run is made or saved are
+ * left out (see ModelParameters.isModelParameter), so runs with the same
+ * results share it. It is identified by the SHA-256 of its canonical form,
+ * so sinks can store each configuration once and runs that share it refer
+ * to the same hash.
+ * 
+ * The canonical form is a line name<tab>value per parameter, sorted by
+ * name. Whole numbers are written without decimals and other numbers as
+ * doubles, so the hash doesn't depend on the Java type of the values.
+ */
+public class ParameterSet {
+
+	// Doubles below it hold whole numbers exactly
+	private static final double MAX_EXACT = 1L << 53;
+
+	public final String hash;
+	private final Map<String, String> values;
+
+	private ParameterSet(Map<String, String> values) {
+		this.values = Collections.unmodifiableMap(values);
+		hash = sha256(canonical());
+	}
+
+	public static ParameterSet of(ModelParameters params) {
+		Map<String, String> values = new TreeMap<String, String>();
+
+		for (String paramName : params.names()) {
+			if (ModelParameters.isModelParameter(paramName)
+					&& !OutputSinks.isRunParam(paramName))
+				values.put(paramName, canonical(params.get(paramName)));
+		}
+
+		return new ParameterSet(values);
+	}
+
+	/*
+	 * The scenario of a run: every model parameter but the random seed, so
+	 * the runs of the seeds of a scenario share it
+	 */
+	public static ParameterSet scenarioOf(ModelParameters params) {
+		Map<String, String> values = new TreeMap<String, String>();
+
+		for (String paramName : params.names()) {
+			if (ModelParameters.isModelParameter(paramName)
+					&& !paramName.equals("randomSeed"))
+				values.put(paramName, canonical(params.get(paramName)));
+		}
+
+		return new ParameterSet(values);
+	}
+
+	/*
+	 * Parameter values as saved, sorted by name
+	 */
+	public Map<String, String> values() {
+		return values;
+	}
+
+	public String canonical() {
+		StringBuilder s = new StringBuilder(32 * values.size());
+
+		for (Map.Entry<String, String> e : values.entrySet()) {
+			s.append(escape(e.getKey())).append('\t').append(
+					escape(e.getValue())).append('\n');
+		}
+
+		return s.toString();
+	}
+
+	/*
+	 * The value as saved, the same for numbers of any type
+	 */
+	static String canonical(Object value) {
+		if (value instanceof Double || value instanceof Float) {
+			// A float as the double of its decimal form, 0.1f as 0.1
+			double d = (value instanceof Float) ? Double.parseDouble(value
+					.toString()) : ((Number) value).doubleValue();
+			if (d == Math.rint(d) && Math.abs(d) < MAX_EXACT)
+				return Long.toString((long) d);
+			else
+				return Double.toString(d);
+		} else if (value instanceof Number) {
+			return Long.toString(((Number) value).longValue());
+		} else {
+			return String.valueOf(value);
+		}
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n",
+				"\\n").replace("\r", "\\r");
+	}
+
+	private static String sha256(String s) {
+		try {
+			byte[] d = MessageDigest.getInstance("SHA-256").digest(
+					s.getBytes("UTF-8"));
+
+			StringBuilder hex = new StringBuilder(2 * d.length);
+			for (byte b : d)
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+						Character.forDigit(b & 0xf, 16));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public String toString() {
+		return hash;
+	}
+
+}
@@ -0,0 +1,323 @@
+package suddenStop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * Approximate quantiles of a stream of values in a KLL sketch. Values go
+ * into a stack of compactors: level h holds values standing for 2^h values
+ * each. When the sketch is full the lowest full level is sorted and every
+ * other value is promoted to the next level. Capacities shrink by 2/3 per
+ * level down from the top, so the sketch keeps O(k) values whatever the
+ * count, with rank error about 1.7 / k.
+ * 
+ * Sketches of the same k can be merged, so sketches of runs or seeds add up
+ * to the sketch of all their values. The values promoted alternate between
+ * the odd and the even ones instead of being drawn at random, so the same
+ * values always give the same sketch.
+ */
+public class QuantileSketch {
+
+	public static final int DEFAULT_K = 200;
+
+	private static final double CAPACITY_RATIO = 2.0 / 3.0;
+	private static final int MIN_CAPACITY = 2;
+
+	private final int k;
+	private long count = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	// Values of each level, in sizes[h] first positions of levels[h]
+	private double[][] levels = new double[1][];
+	private int[] sizes = new int[1];
+	private int retained = 0;
+
+	// Whether the next compaction keeps odd positions
+	private boolean oddOffset = false;
+
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	public QuantileSketch(int k) {
+		if (k < MIN_CAPACITY)
+			throw new IllegalArgumentException("k must be at least "
+					+ MIN_CAPACITY);
+		this.k = k;
+		levels[0] = new double[k];
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public long count() {
+		return count;
+	}
+
+	public double min() {
+		return min;
+	}
+
+	public double max() {
+		return max;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/*
+	 * Empties the sketch to reuse it. The capacities depend on the number of
+	 * levels, so it goes back to a single level, as a new sketch
+	 */
+	public void clear() {
+		count = 0;
+		min = max = Double.NaN;
+		levels = new double[1][];
+		sizes = new int[1];
+		levels[0] = new double[k];
+		retained = 0;
+		oddOffset = false;
+	}
+
+	/*
+	 * NaN values are ignored
+	 */
+	public void update(double value) {
+		if (Double.isNaN(value))
+			return;
+
+		if (count == 0) {
+			min = max = value;
+		} else {
+			if (value < min)
+				min = value;
+			if (value > max)
+				max = value;
+		}
+		count++;
+
+		append(0, value);
+		if (retained > totalCapacity())
+			compress();
+	}
+
+	/*
+	 * Adds the values of other to this sketch
+	 */
+	public void merge(QuantileSketch other) {
+		if (other.k != k)
+			throw new IllegalArgumentException("Sketches of k " + k + " and "
+					+ other.k + " can't be merged");
+		if (other.count == 0)
+			return;
+
+		if (count == 0) {
+			min = other.min;
+			max = other.max;
+		} else {
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+		count += other.count;
+
+		for (int h = 0; h < other.sizes.length; h++) {
+			for (int i = 0; i < other.sizes[h]; i++)
+				append(h, other.levels[h][i]);
+		}
+
+		while (retained > totalCapacity())
+			compress();
+	}
+
+	/*
+	 * The value with rank q * count, for q in [0, 1]. NaN if the sketch is
+	 * empty
+	 */
+	public double quantile(double q) {
+		return quantiles(new double[] { q })[0];
+	}
+
+	/*
+	 * The quantiles of qs, which should be sorted, sorting the values once
+	 */
+	public double[] quantiles(double[] qs) {
+		double[] result = new double[qs.length];
+		if (count == 0) {
+			Arrays.fill(result, Double.NaN);
+			return result;
+		}
+
+		double[] values = new double[retained];
+		long[] weights = new long[retained];
+		sortedValues(values, weights);
+
+		long total = 0;
+		for (long w : weights)
+			total += w;
+
+		int i = 0;
+		long cum = 0;
+		for (int j = 0; j < qs.length; j++) {
+			if (qs[j] <= 0) {
+				result[j] = min;
+			} else if (qs[j] >= 1) {
+				result[j] = max;
+			} else {
+				double rank = qs[j] * total;
+				while (i < values.length - 1 && cum + weights[i] < rank)
+					cum += weights[i++];
+				result[j] = values[i];
+			}
+		}
+
+		return result;
+	}
+
+	/*
+	 * Writes k, the exact count, min and max, and the values of each level
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeShort(k);
+		out.writeLong(count);
+		out.writeDouble(min);
+		out.writeDouble(max);
+		out.writeBoolean(oddOffset);
+		out.writeByte(sizes.length);
+		for (int h = 0; h < sizes.length; h++) {
+			out.writeShort(sizes[h]);
+			for (int i = 0; i < sizes[h]; i++)
+				out.writeDouble(levels[h][i]);
+		}
+	}
+
+	public byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				32 + 8 * retained);
+		try {
+			writeTo(new DataOutputStream(bytes));
+		} catch (IOException e) {
+			// Not thrown by a byte array
+			throw new RuntimeException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public static QuantileSketch fromBytes(byte[] bytes) throws IOException {
+		return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	public static QuantileSketch readFrom(DataInput in) throws IOException {
+		QuantileSketch s = new QuantileSketch(in.readUnsignedShort());
+
+		s.count = in.readLong();
+		s.min = in.readDouble();
+		s.max = in.readDouble();
+		s.oddOffset = in.readBoolean();
+
+		int n = in.readUnsignedByte();
+		for (int h = 0; h < n; h++) {
+			int size = in.readUnsignedShort();
+			for (int i = 0; i < size; i++)
+				s.append(h, in.readDouble());
+		}
+
+		return s;
+	}
+
+	private void append(int level, double value) {
+		if (level >= sizes.length) {
+			levels = Arrays.copyOf(levels, level + 1);
+			sizes = Arrays.copyOf(sizes, level + 1);
+		}
+		if (levels[level] == null)
+			levels[level] = new double[Math.max(MIN_CAPACITY,
+					capacity(level))];
+		if (sizes[level] == levels[level].length)
+			levels[level] = Arrays.copyOf(levels[level],
+					2 * levels[level].length);
+
+		levels[level][sizes[level]++] = value;
+		retained++;
+	}
+
+	/*
+	 * Halves the lowest level over its capacity into the next one
+	 */
+	private void compress() {
+		for (int h = 0; h < sizes.length; h++) {
+			if (sizes[h] >= capacity(h)) {
+				double[] v = levels[h];
+				int n = sizes[h];
+				Arrays.sort(v, 0, n);
+
+				// An odd value out stays at this level
+				int pairs = n / 2;
+				double left = (n % 2 == 1) ? v[n - 1] : Double.NaN;
+
+				sizes[h] = 0;
+				retained -= n;
+
+				int offset = oddOffset ? 1 : 0;
+				oddOffset = !oddOffset;
+				for (int i = 0; i < pairs; i++)
+					append(h + 1, v[2 * i + offset]);
+
+				if (n % 2 == 1)
+					append(h, left);
+
+				return;
+			}
+		}
+	}
+
+	private int totalCapacity() {
+		int total = 0;
+		for (int h = 0; h < sizes.length; h++)
+			total += capacity(h);
+		return total;
+	}
+
+	private int capacity(int level) {
+		int depth = sizes.length - 1 - level;
+		return Math.max(MIN_CAPACITY, (int) Math.ceil(k
+				* Math.pow(CAPACITY_RATIO, Math.max(0, depth))));
+	}
+
+	private void sortedValues(double[] values, long[] weights) {
+		int j = 0;
+		for (int h = 0; h < sizes.length; h++) {
+			for (int i = 0; i < sizes[h]; i++) {
+				values[j] = levels[h][i];
+				weights[j++] = 1L << h;
+			}
+		}
+
+		// Sorts by value keeping each weight with its value
+		Integer[] order = new Integer[values.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		final double[] v = values.clone();
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(v[a], v[b]);
+			}
+		});
+
+		long[] w = weights.clone();
+		for (int i = 0; i < order.length; i++) {
+			values[i] = v[order[i]];
+			weights[i] = w[order[i]];
+		}
+	}
+
+}
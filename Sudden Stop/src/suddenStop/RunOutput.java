@@ -0,0 +1,22 @@
+package suddenStop;
+
+import java.io.IOException;
+
+/*
+ * The data of a run, written tick by tick by a single thread
+ */
+public interface RunOutput {
+
+	/*
+	 * Writes the market data, the constant data of the firms born and the
+	 * per tick data of every firm. The output may buffer the rows, and
+	 * should not keep r, as it is reused
+	 */
+	public void writeTick(TickRecord r) throws IOException;
+
+	/*
+	 * Writes anything buffered and releases the output
+	 */
+	public void close() throws IOException;
+
+}
@@ -0,0 +1,407 @@
+package suddenStop;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+
+/*
+ * The data of a run saved in SQL Server through its own connection. Rows are
+ * sent in batches of batchSize, each batch in a transaction.
+ * 
+ * The Firm columns of FirmExits and FirmTrajectories are BIGINT, so firm IDs
+ * are kept exactly.
+ * 
+ * With firmTrajectories the rows per tick of the firms go to FirmTrajectories
+ * instead, a row per block of a firm trajectory (see TrajectoryFile).
+ */
+public class SQLServerRunOutput implements RunOutput {
+
+	private int simID;
+	private int run;
+	private Connection conn = null;
+	private PreparedStatement mktDataPstm;
+	private PreparedStatement firmsConstDataPstm;
+	private PreparedStatement firmsPerTickDataPstm;
+	private PreparedStatement firmExitsPstm;
+	private FirmColumn[] perTickColumns;
+
+	// Only when just aggregates are saved
+	private PreparedStatement aggregatesPstm = null;
+	private String[] buckets;
+
+	// Only when firm columns are sketched
+	private PreparedStatement sketchesPstm = null;
+	private FirmColumn[] sketchColumns;
+
+	// Only when firm rows are saved as trajectories
+	private PreparedStatement trajectoriesPstm = null;
+	private FirmTrajectories trajectories = null;
+
+	private int batchSize;
+	private int pendingRows = 0;
+
+	SQLServerRunOutput(SQLServerSink sink, int run, ModelParameters params)
+			throws IOException {
+
+		simID = sink.getSimID();
+		this.run = run;
+		batchSize = params.sqlBatchSize;
+		perTickColumns = params.firmColumns;
+
+		try {
+			conn = sink.connect();
+			conn.setAutoCommit(false);
+
+			ParameterSet paramSet = ParameterSet.of(params);
+			sink.saveParameterSet(conn, paramSet);
+
+			saveRunParams(params, paramSet);
+
+			createPrepStatments(params);
+		} catch (SQLException e) {
+			close(conn);
+			throw new IOException("Error trying to start run " + run
+					+ " in the database", e);
+		}
+
+	}
+
+	private void saveRunParams(ModelParameters params, ParameterSet paramSet)
+			throws SQLException {
+		double ssM = params.suddenStopMagnitude;
+		int ssS = params.suddenStopStart;
+		int rndSeed = (Integer) params.get("randomSeed");
+
+		String sqlStr = "INSERT INTO RunParameters VALUES (" + simID + ", "
+				+ run + ", " + ssM + "," + ssS + ", " + rndSeed + ", '"
+				+ paramSet.hash + "' )";
+
+		Statement stmt = null;
+		try {
+			stmt = conn.createStatement();
+			stmt.executeUpdate(sqlStr);
+			conn.commit();
+
+		} finally {
+			try {
+				stmt.close();
+			} catch (Throwable ignore) {
+			}
+		}
+
+		System.out.println("Run: " + run + " started");
+
+	}
+
+	private void createPrepStatments(ModelParameters params)
+			throws SQLException {
+		String mktDataStr = "INSERT INTO MarketData "
+				+ "( Simulation, RunNumber, Tick, Price, TotalQuantity ) "
+				+ "VALUES ( ?, ? , ?, ?, ? )";
+
+		String firmsConstDataStr = "INSERT INTO IndividualFirms ("
+				+ "Simulation, RunNumber, Firm, "
+				+ "InitialFUC, RDEfficiency, TargetLeverage, "
+				+ "LearningRate, Born ) "
+				+ "VALUES (?,?,?,?,?,?,?,?)";
+
+		// Only the columns chosen in firmColumns
+		StringBuilder names = new StringBuilder(
+				"Simulation, RunNumber, Tick, Firm");
+		StringBuilder values = new StringBuilder("?,?,?,?");
+		for (FirmColumn c : perTickColumns) {
+			names.append(", ").append(c.columnName);
+			values.append(",?");
+		}
+		String firmsPerTickDataStr = "INSERT INTO [IndividualFirmsPerTick] ("
+				+ names + " ) VALUES (" + values + ")";
+
+		mktDataPstm = conn.prepareStatement(mktDataStr);
+		firmsConstDataPstm = conn.prepareStatement(firmsConstDataStr);
+		firmsPerTickDataPstm = conn.prepareStatement(firmsPerTickDataStr);
+		firmExitsPstm = conn.prepareStatement("INSERT INTO FirmExits "
+				+ "( Simulation, RunNumber, Tick, Firm, Cause ) "
+				+ "VALUES ( ?, ?, ?, ?, ? )");
+
+		sketchColumns = params.sketchColumns;
+		if (sketchColumns.length > 0) {
+			names = new StringBuilder("Simulation, RunNumber, Tick, "
+					+ "ColumnName, Firms");
+			values = new StringBuilder("?,?,?,?,?");
+			for (String q : SketchFile.QUANTILE_NAMES) {
+				names.append(", ").append(q);
+				values.append(",?");
+			}
+			sketchesPstm = conn.prepareStatement("INSERT INTO FirmSketches ("
+					+ names + ", Sketch ) VALUES (" + values + ",?)");
+		}
+
+		if (params.firmTrajectories) {
+			trajectoriesPstm = conn.prepareStatement("INSERT INTO "
+					+ "FirmTrajectories ( Simulation, RunNumber, Firm, "
+					+ "FirstTick, LastTick, Points, Trajectory ) "
+					+ "VALUES ( ?, ?, ?, ?, ?, ?, ? )");
+			trajectories = new FirmTrajectories(perTickColumns.length) {
+				protected void writeBlock(TrajectoryEncoder block)
+						throws IOException {
+					try {
+						saveTrajectory(block);
+					} catch (SQLException e) {
+						throw new IOException("Error trying to write the "
+								+ "trajectory of firm " + block.firm
+								+ " of run " + run, e);
+					}
+				}
+			};
+		}
+
+		if (params.aggregateOnly) {
+			buckets = TickAggregates.bucketNames(params);
+
+			names = new StringBuilder("Simulation, RunNumber, Tick, Bucket, "
+					+ "Firms, Births, Exits");
+			values = new StringBuilder("?,?,?,?,?,?,?");
+			for (String stat : TickAggregates.statNames(perTickColumns)) {
+				names.append(", ").append(stat);
+				values.append(",?");
+			}
+			aggregatesPstm = conn.prepareStatement("INSERT INTO "
+					+ "IndustryAggregates (" + names + " ) VALUES ("
+					+ values + ")");
+		}
+
+	}
+
+	public void writeTick(TickRecord r) throws IOException {
+
+		try {
+			saveMktData(r);
+
+			if (r.sketches != null)
+				saveSketches(r);
+
+			if (r.aggregates != null) {
+				saveAggregates(r);
+				return;
+			}
+
+			for (int i = 0; i < r.newFirms; i++)
+				saveConstFirmData(r, i);
+
+			for (int i = 0; i < r.exits; i++)
+				saveFirmExit(r, i);
+
+			if (trajectories != null) {
+				trajectories.add(r);
+				return;
+			}
+
+			for (int i = 0; i < r.firms; i++)
+				savePerTickFirmData(r, i);
+		} catch (SQLException e) {
+			throw new IOException("Error trying to write tick " + r.tick
+					+ " of run " + run, e);
+		}
+
+	}
+
+	/*
+	 * Sends the rows pending in a single transaction. Firms go before their
+	 * per tick data
+	 */
+	private void flush() throws SQLException {
+		mktDataPstm.executeBatch();
+		firmsConstDataPstm.executeBatch();
+		firmsPerTickDataPstm.executeBatch();
+		firmExitsPstm.executeBatch();
+		if (aggregatesPstm != null)
+			aggregatesPstm.executeBatch();
+		if (sketchesPstm != null)
+			sketchesPstm.executeBatch();
+		if (trajectoriesPstm != null)
+			trajectoriesPstm.executeBatch();
+		conn.commit();
+
+		pendingRows = 0;
+	}
+
+	private void rowAdded() throws SQLException {
+		if (++pendingRows >= batchSize)
+			flush();
+	}
+
+	public void close() throws IOException {
+		try {
+			if (trajectories != null)
+				trajectories.finish();
+			flush();
+
+			mktDataPstm.close();
+			firmsConstDataPstm.close();
+			firmsPerTickDataPstm.close();
+			firmExitsPstm.close();
+			if (aggregatesPstm != null)
+				aggregatesPstm.close();
+			if (sketchesPstm != null)
+				sketchesPstm.close();
+			if (trajectoriesPstm != null)
+				trajectoriesPstm.close();
+		} catch (SQLException e) {
+			throw new IOException("Error trying to finish run " + run
+					+ " in the database", e);
+		} finally {
+			close(conn);
+		}
+	}
+
+	private static void close(Connection conn) {
+		try {
+			conn.close();
+		} catch (Throwable ignore) {
+		}
+	}
+
+	private void saveMktData(TickRecord r) throws SQLException {
+
+		mktDataPstm.setInt(1, simID);
+		mktDataPstm.setInt(2, run);
+		mktDataPstm.setDouble(3, r.tick);
+		mktDataPstm.setDouble(4, r.price);
+		mktDataPstm.setDouble(5, r.totalQuantity);
+		mktDataPstm.addBatch();
+
+		rowAdded();
+
+	}
+
+	/*
+	 * A row per bucket. Means and variances of empty buckets, NaN, are saved
+	 * as NULL, since SQL Server has no NaN
+	 */
+	private void saveAggregates(TickRecord r) throws SQLException {
+		TickAggregates a = r.aggregates;
+
+		for (int b = 0; b < a.buckets; b++) {
+			aggregatesPstm.setInt(1, simID);
+			aggregatesPstm.setInt(2, run);
+			aggregatesPstm.setDouble(3, r.tick);
+			aggregatesPstm.setString(4, buckets[b]);
+			aggregatesPstm.setInt(5, a.firms[b]);
+			aggregatesPstm.setInt(6, a.births[b]);
+			aggregatesPstm.setInt(7, a.exits[b]);
+
+			int p = 8;
+			for (int c = 0; c < a.columns.length; c++) {
+				aggregatesPstm.setDouble(p++, a.sum[b * a.columns.length + c]);
+				setDoubleOrNull(aggregatesPstm, p++, a.mean(b, c));
+				setDoubleOrNull(aggregatesPstm, p++, a.variance(b, c));
+			}
+			aggregatesPstm.addBatch();
+
+			rowAdded();
+		}
+
+	}
+
+	/*
+	 * A row per sketched column with its quantiles and the serialized
+	 * sketch, see QuantileSketch.toBytes
+	 */
+	private void saveSketches(TickRecord r) throws SQLException {
+
+		for (int c = 0; c < sketchColumns.length; c++) {
+			QuantileSketch s = r.sketches[c];
+
+			sketchesPstm.setInt(1, simID);
+			sketchesPstm.setInt(2, run);
+			sketchesPstm.setDouble(3, r.tick);
+			sketchesPstm.setString(4, sketchColumns[c].columnName);
+			sketchesPstm.setLong(5, s.count());
+
+			int p = 6;
+			for (double q : s.quantiles(SketchFile.QUANTILES))
+				setDoubleOrNull(sketchesPstm, p++, q);
+			sketchesPstm.setBytes(p, s.toBytes());
+			sketchesPstm.addBatch();
+
+			rowAdded();
+		}
+
+	}
+
+	private void saveTrajectory(TrajectoryEncoder block) throws SQLException {
+
+		trajectoriesPstm.setInt(1, simID);
+		trajectoriesPstm.setInt(2, run);
+		trajectoriesPstm.setLong(3, block.firm);
+		trajectoriesPstm.setDouble(4, block.firstTick);
+		trajectoriesPstm.setDouble(5, block.lastTick);
+		trajectoriesPstm.setInt(6, block.points);
+		trajectoriesPstm.setBytes(7, Arrays.copyOf(block.bytes(), block
+				.length()));
+		trajectoriesPstm.addBatch();
+
+		rowAdded();
+
+	}
+
+	private static void setDoubleOrNull(PreparedStatement pstm, int i,
+			double value) throws SQLException {
+		if (Double.isNaN(value))
+			pstm.setNull(i, Types.DOUBLE);
+		else
+			pstm.setDouble(i, value);
+	}
+
+	private void saveConstFirmData(TickRecord r, int i) throws SQLException {
+
+		firmsConstDataPstm.setInt(1, simID);
+		firmsConstDataPstm.setInt(2, run);
+		firmsConstDataPstm.setFloat(3, r.newFirmIDs[i]);
+		for (int c = 0; c < TickRecord.CONST_COLUMNS; c++)
+			firmsConstDataPstm.setDouble(4 + c, r.newFirmData[i
+					* TickRecord.CONST_COLUMNS + c]);
+		firmsConstDataPstm.addBatch();
+
+		rowAdded();
+
+	}
+
+	private void saveFirmExit(TickRecord r, int i) throws SQLException {
+
+		firmExitsPstm.setInt(1, simID);
+		firmExitsPstm.setInt(2, run);
+		firmExitsPstm.setDouble(3, r.tick);
+		firmExitsPstm.setLong(4, r.exitFirmIDs[i]);
+		firmExitsPstm.setString(5, r.exitCauses[i].name());
+		firmExitsPstm.addBatch();
+
+		rowAdded();
+
+	}
+
+	private void savePerTickFirmData(TickRecord r, int i) throws SQLException {
+
+		firmsPerTickDataPstm.setInt(1, simID);
+		firmsPerTickDataPstm.setInt(2, run);
+		firmsPerTickDataPstm.setDouble(3, r.tick);
+		firmsPerTickDataPstm.setFloat(4, r.firmIDs[i]);
+		int base = i * perTickColumns.length;
+		for (int c = 0; c < perTickColumns.length; c++) {
+			if (perTickColumns[c] == FirmColumn.TO_BE_KILLED)
+				firmsPerTickDataPstm.setBoolean(5 + c,
+						r.firmData[base + c] != 0);
+			else
+				firmsPerTickDataPstm.setDouble(5 + c, r.firmData[base + c]);
+		}
+		firmsPerTickDataPstm.addBatch();
+
+		rowAdded();
+
+	}
+
+}
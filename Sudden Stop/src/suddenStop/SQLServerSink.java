@@ -0,0 +1,221 @@
+package suddenStop;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import repast.simphony.context.Context;
+
+/*
+ * Saves the data in a SQL Server database, with integrated security. The
+ * simulation gets the next SimID when it is opened. Each run opens its own
+ * connection, so runs can write at the same time.
+ */
+public class SQLServerSink implements OutputSink {
+
+	private String conStr;
+	private int simID;
+
+	// Hashes known to be in ParameterSets
+	private Set<String> paramSets = new HashSet<String>();
+
+	public SQLServerSink(String sqlSrv, String db) {
+		conStr = "jdbc:sqlserver://" + sqlSrv + ";databaseName=" + db
+				+ ";integratedSecurity=true;";
+	}
+
+	public void open(ModelParameters params) throws IOException {
+
+		Connection conn = null;
+		try {
+			conn = connect();
+			conn.setAutoCommit(false);
+			System.out.println("Connection to database established");
+
+			// Gets the next simID from database
+			simID = nextSimID(conn);
+
+			// Saves simulation data and parameters of the whole simulation
+			saveSimulationData(conn, params);
+			saveSimulationParams(conn, params);
+
+			conn.commit();
+		} catch (SQLException e) {
+			throw new IOException("Error trying to save Simulation Info", e);
+		} finally {
+			try {
+				conn.close();
+			} catch (Throwable ignore) {
+			}
+		}
+
+		System.out.println("Simulation Info saved");
+
+	}
+
+	public RunOutput openRun(int run, ModelParameters params)
+			throws IOException {
+		return new SQLServerRunOutput(this, run, params);
+	}
+
+	/*
+	 * Each run closes its own connection, so there is nothing to release
+	 */
+	public void close() throws IOException {
+	}
+
+	public int getSimID() {
+		return simID;
+	}
+
+	/*
+	 * Opens a new connection to the database of the simulation
+	 */
+	Connection connect() throws SQLException {
+
+		/*
+		 * The class loader used when the GUI calls the batch doesn't find
+		 * the sql driver.
+		 * Nick Nicollier suggested using another class loader and it worked 
+		 */
+		ClassLoader current = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(Context.class.getClassLoader());
+
+		try {
+			return DriverManager.getConnection(conStr);
+		} finally {
+			// Part of Nick suggestion
+			Thread.currentThread().setContextClassLoader(current);
+		}
+
+	}
+
+	/*
+	 * Saves set in ParameterSets unless it is already there, which takes a
+	 * single lookup, or none if a run of this simulation saved it. It is
+	 * committed on conn
+	 */
+	synchronized void saveParameterSet(Connection conn, ParameterSet set)
+			throws SQLException {
+
+		if (paramSets.contains(set.hash))
+			return;
+
+		PreparedStatement pstmt = null;
+		try {
+			pstmt = conn.prepareStatement("SELECT COUNT(*) FROM "
+					+ "ParameterSets WHERE Hash = ?");
+			pstmt.setString(1, set.hash);
+			ResultSet rs = pstmt.executeQuery();
+			boolean saved = rs.next() && rs.getInt(1) > 0;
+			pstmt.close();
+
+			if (!saved) {
+				pstmt = conn.prepareStatement("INSERT INTO ParameterSets "
+						+ "( Hash, Name, Value ) VALUES ( ?, ?, ? )");
+				for (Map.Entry<String, String> e : set.values().entrySet()) {
+					pstmt.setString(1, set.hash);
+					pstmt.setString(2, e.getKey());
+					pstmt.setString(3, e.getValue());
+					pstmt.addBatch();
+				}
+				pstmt.executeBatch();
+			}
+			conn.commit();
+		} finally {
+			try {
+				pstmt.close();
+			} catch (Throwable ignore) {
+			}
+		}
+
+		paramSets.add(set.hash);
+
+	}
+
+	private static int nextSimID(Connection conn) throws SQLException {
+		// Get next simulation number
+		String sqlStr = "SELECT MAX(SimID) FROM Simulations";
+
+		Statement stmt = null;
+		try {
+			stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery(sqlStr);
+			if (rs.next()) {
+				return rs.getInt(1) + 1;
+			} else {
+				return 1;
+			}
+
+		} finally {
+			try {
+				stmt.close();
+			} catch (Throwable ignore) {
+			}
+		}
+	}
+
+	private void saveSimulationData(Connection conn, ModelParameters params)
+			throws SQLException {
+		String desc = params.getString("simDescription");
+
+		String sqlStr = "INSERT INTO Simulations (SimID, Description) "
+				+ "VALUES (" + simID + ", '" + desc + "' )";
+
+		Statement stmt = null;
+		try {
+			stmt = conn.createStatement();
+			stmt.executeUpdate(sqlStr);
+			System.out.println("Simulation " + simID
+					+ " added to Table \"Simulations\".");
+
+		} finally {
+			try {
+				stmt.close();
+			} catch (Throwable ignore) {
+			}
+		}
+
+	}
+
+	private void saveSimulationParams(Connection conn, ModelParameters params)
+			throws SQLException {
+
+		String sqlStr = "INSERT INTO SimulationParameters VALUES (" + simID
+				+ ", ? , ? )";
+
+		PreparedStatement pstmt = null;
+
+		try {
+			pstmt = conn.prepareStatement(sqlStr);
+			for (String paramName : params.names()) {
+				if (OutputSinks.isSimData(paramName)
+						|| OutputSinks.isRunParam(paramName)) {
+					continue;
+				} else {
+					pstmt.setString(1, paramName);
+					pstmt.setString(2, String.valueOf(params.get(paramName)));
+					pstmt.addBatch();
+				}
+			}
+			pstmt.executeBatch();
+			System.out
+					.println("Parameters of the whole simulation saved to table \"Simulation Parameters\".");
+
+		} finally {
+			try {
+				pstmt.close();
+			} catch (Throwable ignore) {
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,237 @@
+package suddenStop;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Averages the market series of the runs of a sweep over the seeds of each
+ * scenario as runs finish, so no run has to be saved. A scenario is every
+ * model parameter but the random seed, see ParameterSet.scenarioOf.
+ * 
+ * For each series and tick it keeps the mean and variance over the runs
+ * with Welford updates, and a 95% confidence band of the mean, mean +-
+ * 1.96 standard errors. When the last run of a scenario is added its curves
+ * are final, and they are saved right away if a directory was given.
+ */
+public class ScenarioAggregator {
+
+	private static final double Z95 = 1.96;
+
+	/*
+	 * The curves of a scenario
+	 */
+	public static class Scenario {
+
+		public final ParameterSet params;
+		public final int expectedRuns;
+		private int runs = 0;
+
+		private int ticks = 0;
+		// By tick, at tick - 1
+		private int[] n = new int[0];
+		// By series and tick
+		private double[][] mean = new double[MarketSeries.SERIES][0];
+		private double[][] m2 = new double[MarketSeries.SERIES][0];
+
+		private Scenario(ParameterSet params, int expectedRuns) {
+			this.params = params;
+			this.expectedRuns = expectedRuns;
+		}
+
+		private void add(MarketSeries series) {
+			if (series.ticks() > ticks) {
+				ticks = series.ticks();
+				n = Arrays.copyOf(n, ticks);
+				for (int s = 0; s < MarketSeries.SERIES; s++) {
+					mean[s] = Arrays.copyOf(mean[s], ticks);
+					m2[s] = Arrays.copyOf(m2[s], ticks);
+				}
+			}
+
+			for (int t = 1; t <= series.ticks(); t++) {
+				if (!series.isRecorded(t))
+					continue;
+
+				int k = ++n[t - 1];
+				for (int s = 0; s < MarketSeries.SERIES; s++) {
+					double x = series.get(s, t);
+					double delta = x - mean[s][t - 1];
+					mean[s][t - 1] += delta / k;
+					m2[s][t - 1] += delta * (x - mean[s][t - 1]);
+				}
+			}
+
+			runs++;
+		}
+
+		public int runs() {
+			return runs;
+		}
+
+		public boolean isDone() {
+			return runs >= expectedRuns;
+		}
+
+		public String toString() {
+			return "Scenario " + params.hash + ": " + runs + " of "
+					+ expectedRuns + " runs";
+		}
+
+		public int ticks() {
+			return ticks;
+		}
+
+		/*
+		 * Runs that reached tick
+		 */
+		public int count(int tick) {
+			return n[tick - 1];
+		}
+
+		public double mean(int series, int tick) {
+			return (n[tick - 1] > 0) ? mean[series][tick - 1] : Double.NaN;
+		}
+
+		/*
+		 * Sample variance over the runs, NaN with fewer than two
+		 */
+		public double variance(int series, int tick) {
+			int k = n[tick - 1];
+			return (k > 1) ? m2[series][tick - 1] / (k - 1) : Double.NaN;
+		}
+
+		/*
+		 * Half the width of the 95% confidence band of the mean
+		 */
+		public double halfWidth(int series, int tick) {
+			return Z95 * Math.sqrt(variance(series, tick) / n[tick - 1]);
+		}
+
+		/*
+		 * Writes a row per tick with the runs and, for every series, its
+		 * mean, standard deviation and confidence band
+		 */
+		public void write(File f) throws IOException {
+			String[] names = new String[2 + 4 * MarketSeries.SERIES];
+			names[0] = "Tick";
+			names[1] = "Runs";
+			for (int s = 0; s < MarketSeries.SERIES; s++) {
+				String name = MarketSeries.NAMES[s];
+				names[2 + 4 * s] = name + "Mean";
+				names[3 + 4 * s] = name + "SD";
+				names[4 + 4 * s] = name + "Lo95";
+				names[5 + 4 * s] = name + "Hi95";
+			}
+
+			Writer w = FileSink.open(f, names);
+			try {
+				StringBuilder line = new StringBuilder(256);
+				for (int t = 1; t <= ticks; t++) {
+					if (n[t - 1] == 0)
+						continue;
+
+					line.setLength(0);
+					line.append(t).append('\t').append(n[t - 1]);
+					for (int s = 0; s < MarketSeries.SERIES; s++) {
+						double m = mean(s, t);
+						double h = halfWidth(s, t);
+						line.append('\t').append(m);
+						line.append('\t').append(Math.sqrt(variance(s, t)));
+						line.append('\t').append(m - h);
+						line.append('\t').append(m + h);
+					}
+					line.append('\n');
+					w.append(line);
+				}
+			} finally {
+				w.close();
+			}
+		}
+
+	}
+
+	private Map<String, Scenario> scenarios = new LinkedHashMap<String, Scenario>();
+	private File dir = null;
+
+	/*
+	 * runs are the parameters of every run of the sweep, to know how many
+	 * runs each scenario has
+	 */
+	public ScenarioAggregator(List<Map<String, Object>> runs) {
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		Map<String, ParameterSet> sets = new LinkedHashMap<String, ParameterSet>();
+
+		for (Map<String, Object> run : runs) {
+			ParameterSet p = ParameterSet.scenarioOf(new ModelParameters(run));
+			Integer e = expected.get(p.hash);
+			expected.put(p.hash, (e == null) ? 1 : e + 1);
+			sets.put(p.hash, p);
+		}
+
+		for (ParameterSet p : sets.values())
+			scenarios.put(p.hash, new Scenario(p, expected.get(p.hash)));
+	}
+
+	/*
+	 * Each scenario is saved to dir when done, as scenario-<hash>.tsv with
+	 * its curves and scenario-<hash>-parameters.tsv
+	 */
+	public void saveTo(File dir) {
+		this.dir = dir;
+	}
+
+	/*
+	 * Adds a finished run. It can be called from the threads running the
+	 * sweep
+	 */
+	public void add(ModelParameters params, MarketSeries series)
+			throws IOException {
+
+		Scenario s;
+		synchronized (this) {
+			s = scenarios.get(ParameterSet.scenarioOf(params).hash);
+			if (s == null)
+				throw new IllegalArgumentException(
+						"The run is not in the sweep");
+			s.add(series);
+			if (!s.isDone())
+				return;
+		}
+
+		// No run changes it anymore
+		if (dir != null)
+			save(s);
+
+	}
+
+	private void save(Scenario s) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Could not create " + dir);
+
+		s.write(new File(dir, "scenario-" + s.params.hash + ".tsv"));
+
+		Writer w = FileSink.open(new File(dir, "scenario-" + s.params.hash
+				+ "-parameters.tsv"), "Name", "Value");
+		try {
+			for (Map.Entry<String, String> e : s.params.values().entrySet())
+				FileSink.row(w, e.getKey(), e.getValue());
+		} finally {
+			w.close();
+		}
+	}
+
+	/*
+	 * Every scenario of the sweep, done or not, in sweep order
+	 */
+	public synchronized List<Scenario> scenarios() {
+		return new ArrayList<Scenario>(scenarios.values());
+	}
+
+}
@@ -0,0 +1,27 @@
+package suddenStop;
+
+import java.io.IOException;
+
+/*
+ * Output of the ticks that forked runs share. Every tick goes to the output
+ * of each fork, so each one gets the whole run as if it had been made alone.
+ * Closing it leaves those outputs open, for the forks to go on writing to
+ * them.
+ */
+class SharedPrefixOutput implements RunOutput {
+
+	private RunOutput[] outputs;
+
+	SharedPrefixOutput(RunOutput[] outputs) {
+		this.outputs = outputs;
+	}
+
+	public void writeTick(TickRecord r) throws IOException {
+		for (RunOutput o : outputs)
+			o.writeTick(r);
+	}
+
+	public void close() {
+	}
+
+}
@@ -0,0 +1,164 @@
+package suddenStop;
+
+import java.io.IOException;
+
+import cern.jet.random.engine.MersenneTwister;
+import cern.jet.random.engine.RandomEngine;
+
+/*
+ * A run of the model driven by a plain tick loop, without the Repast runtime.
+ * Ticks go from 1 to stopAt * periods, as scheduled in Repast.
+ */
+public class Simulation {
+
+	private ModelParameters params;
+	private SupplyManager supplyManager;
+	private DataCollector collector = null;
+	private MarketSeries series;
+
+	private double tick = 0;
+	private double endTick;
+
+	public Simulation(ModelParameters params) {
+
+		this.params = params;
+
+		Number seed = (Number) params.get("randomSeed");
+		RandomEngine generator = new MersenneTwister(
+				seed != null ? seed.intValue() : (int) System
+						.currentTimeMillis());
+
+		supplyManager = new SupplyManager(params, generator, null);
+
+		endTick = params.stopAt * params.periods;
+		series = new MarketSeries((int) endTick);
+
+	}
+
+	/*
+	 * The run saves its data to sink as run number run
+	 */
+	public Simulation(ModelParameters params, OutputSink sink, int run)
+			throws IOException {
+
+		this(params);
+
+		collector = new DataCollector(sink, supplyManager, run);
+
+	}
+
+	/*
+	 * The run saves its data to output, already opened for run
+	 */
+	Simulation(ModelParameters params, RunOutput output, int run) {
+
+		this(params);
+
+		collector = new DataCollector(output, supplyManager, run);
+
+	}
+
+	/*
+	 * Goes on from the last step of supplyManager. Data is not saved unless
+	 * saveTo is called
+	 */
+	Simulation(ModelParameters params, SupplyManager supplyManager) {
+
+		this.params = params;
+		this.supplyManager = supplyManager;
+
+		if (supplyManager.market != null)
+			tick = supplyManager.market.tick;
+		endTick = params.stopAt * params.periods;
+		series = new MarketSeries((int) endTick);
+
+	}
+
+	/*
+	 * Saves the data of the ticks from now on to sink as run number run
+	 */
+	void saveTo(OutputSink sink, int run) throws IOException {
+		collector = new DataCollector(sink, supplyManager, run);
+	}
+
+	/*
+	 * Returns a copy of this run that goes on with params. See SupplyManager
+	 */
+	public Simulation fork(ModelParameters params) {
+		Simulation s = new Simulation(params, new SupplyManager(supplyManager,
+				params));
+		s.series = new MarketSeries(series);
+		return s;
+	}
+
+	/*
+	 * As fork, saving the data of the copy to output, opened for run. The
+	 * ticks of this run should already be in output
+	 */
+	Simulation fork(ModelParameters params, RunOutput output, int run) {
+		Simulation s = fork(params);
+		s.collector = new DataCollector(output, s.supplyManager, run);
+		return s;
+	}
+
+	public void runUntil(double lastTick) {
+		while (tick < lastTick && !isDone())
+			step();
+	}
+
+	public boolean isDone() {
+		return tick >= endTick;
+	}
+
+	public void step() {
+		supplyManager.step(++tick);
+		series.record(tick, supplyManager);
+
+		if (collector != null)
+			collector.save(tick);
+	}
+
+	public void run() throws IOException {
+		runUntil(endTick);
+
+		end();
+	}
+
+	/*
+	 * Waits for the data to be saved
+	 */
+	public void end() throws IOException {
+		supplyManager.shutdownRunner();
+
+		if (collector != null)
+			collector.close();
+	}
+
+	public double getTick() {
+		return tick;
+	}
+
+	public ModelParameters getParams() {
+		return params;
+	}
+
+	public SupplyManager getSupplyManager() {
+		return supplyManager;
+	}
+
+	/*
+	 * Counters of the writer saving the data, null if it is not saved
+	 */
+	public WriterMetrics getWriterMetrics() {
+		return (collector != null) ? collector.getMetrics() : null;
+	}
+
+	/*
+	 * The market data of every tick run, including the ticks of the run it
+	 * was forked from
+	 */
+	public MarketSeries getSeries() {
+		return series;
+	}
+
+}
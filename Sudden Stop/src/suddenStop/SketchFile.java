@@ -0,0 +1,173 @@
+package suddenStop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+ * The distributions of the sketched firm columns of a run. Each tick the
+ * quantiles of every column go to FirmQuantiles.tsv, and the sketch itself
+ * to FirmSketches.bin, so sketches of several runs or seeds can be merged
+ * with read and merge.
+ * 
+ * FirmSketches.bin starts with a magic number, a version and the column
+ * names, followed by records of tick, column index and sketch.
+ */
+public class SketchFile implements Closeable {
+
+	static final String BINARY = "FirmSketches.bin";
+
+	private static final int MAGIC = 0x5353534B; // SSSK
+	private static final int VERSION = 1;
+
+	static final double[] QUANTILES = { 0, 0.05, 0.25, 0.5, 0.75, 0.95, 1 };
+	static final String[] QUANTILE_NAMES = { "Min", "P5", "P25", "P50",
+			"P75", "P95", "Max" };
+
+	private int simID;
+	private int run;
+	private FirmColumn[] columns;
+
+	private Writer quantiles;
+	private DataOutputStream sketches;
+	private StringBuilder line = new StringBuilder(256);
+
+	SketchFile(File runDir, int simID, int run, FirmColumn[] columns)
+			throws IOException {
+
+		this.simID = simID;
+		this.run = run;
+		this.columns = columns;
+
+		String[] names = new String[5 + QUANTILE_NAMES.length];
+		names[0] = "Simulation";
+		names[1] = "RunNumber";
+		names[2] = "Tick";
+		names[3] = "Column";
+		names[4] = "Firms";
+		System.arraycopy(QUANTILE_NAMES, 0, names, 5, QUANTILE_NAMES.length);
+		quantiles = FileSink.open(new File(runDir, "FirmQuantiles.tsv"),
+				names);
+
+		sketches = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(runDir, BINARY)), 1 << 16));
+		sketches.writeInt(MAGIC);
+		sketches.writeInt(VERSION);
+		sketches.writeByte(columns.length);
+		for (FirmColumn c : columns)
+			sketches.writeUTF(c.columnName);
+
+	}
+
+	void write(TickRecord r) throws IOException {
+		for (int c = 0; c < columns.length; c++) {
+			QuantileSketch s = r.sketches[c];
+
+			line.setLength(0);
+			line.append(simID).append('\t').append(run).append('\t').append(
+					r.tick).append('\t').append(columns[c].columnName)
+					.append('\t').append(s.count());
+			for (double q : s.quantiles(QUANTILES))
+				line.append('\t').append(q);
+			line.append('\n');
+			quantiles.append(line);
+
+			sketches.writeDouble(r.tick);
+			sketches.writeByte(c);
+			s.writeTo(sketches);
+		}
+	}
+
+	public void close() throws IOException {
+		try {
+			quantiles.close();
+		} finally {
+			sketches.close();
+		}
+	}
+
+	/*
+	 * Reads the sketches of a FirmSketches.bin by column name and tick
+	 */
+	public static Map<String, SortedMap<Double, QuantileSketch>> read(File f)
+			throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(f)));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(f + " is not a sketch file");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException(f + " has unknown version " + version);
+
+			String[] names = new String[in.readUnsignedByte()];
+			Map<String, SortedMap<Double, QuantileSketch>> result = new TreeMap<String, SortedMap<Double, QuantileSketch>>();
+			for (int c = 0; c < names.length; c++) {
+				names[c] = in.readUTF();
+				result.put(names[c], new TreeMap<Double, QuantileSketch>());
+			}
+
+			while (true) {
+				double tick;
+				try {
+					tick = in.readDouble();
+				} catch (EOFException end) {
+					return result;
+				}
+				String column = names[in.readUnsignedByte()];
+				result.get(column).put(tick, QuantileSketch.readFrom(in));
+			}
+		} finally {
+			in.close();
+		}
+
+	}
+
+	/*
+	 * Merges the sketches of files, such as the runs of the seeds of a
+	 * scenario, tick by tick
+	 */
+	public static Map<String, SortedMap<Double, QuantileSketch>> merge(
+			List<File> files) throws IOException {
+
+		Map<String, SortedMap<Double, QuantileSketch>> merged = new TreeMap<String, SortedMap<Double, QuantileSketch>>();
+
+		for (File f : files) {
+			for (Map.Entry<String, SortedMap<Double, QuantileSketch>> col : read(
+					f).entrySet()) {
+				SortedMap<Double, QuantileSketch> ticks = merged.get(col
+						.getKey());
+				if (ticks == null) {
+					merged.put(col.getKey(), col.getValue());
+					continue;
+				}
+
+				for (Map.Entry<Double, QuantileSketch> t : col.getValue()
+						.entrySet()) {
+					QuantileSketch s = ticks.get(t.getKey());
+					if (s == null)
+						ticks.put(t.getKey(), t.getValue());
+					else
+						s.merge(t.getValue());
+				}
+			}
+		}
+
+		return merged;
+
+	}
+
+}
@@ -1,28 +1,72 @@
 package suddenStop;
 
+import java.io.IOException;
+
 import repast.simphony.context.Context;
 import repast.simphony.context.DefaultContext;
 import repast.simphony.dataLoader.ContextBuilder;
 import repast.simphony.engine.environment.RunEnvironment;
-import static repast.simphony.essentials.RepastEssentials.*;
+import repast.simphony.engine.environment.RunState;
+import repast.simphony.random.RandomHelper;
 
+/*
+ * Builds a run inside Repast. The model itself doesn't need Repast, see
+ * HeadlessKernel to run it without
+ */
 public class SuddenStopBuilder extends DefaultContext<Object> implements
 		ContextBuilder<Object> {
 
+	// Opened on the first batch run
+	private OutputSink sink = null;
+
 	@Override
 	public Context<Object> build(Context<Object> context) {
 
-		SupplyManager sm = new SupplyManager(context);
+		ModelParameters params = ModelParameters.fromRunEnvironment();
+
+		boolean batch = RunEnvironment.getInstance().isBatch();
+
+		SupplyManager sm = new SupplyManager(params,
+				RandomHelper.getGenerator(), batch ? null : context);
+		context.add(sm);
 
-		if (RunEnvironment.getInstance().isBatch()) {
-			new SQLDataCollector(context, sm);
+		if (batch) {
+			int run = RunState.getInstance().getRunInfo().getRunNumber();
+
+			try {
+				if (sink == null) {
+					OutputSink s = OutputSinks.create(params);
+					s.open(params);
+					closeAtExit(s);
+					sink = s;
+				}
+
+				context.add(new DataCollector(sink, sm, run));
+			} catch (IOException e) {
+				throw new RuntimeException("Data of run " + run
+						+ " can't be saved", e);
+			}
 		}
 
-		RunEnvironment.getInstance().endAt(
-				(Double) GetParameter("stopAt")
-						* (Integer) GetParameter("periods"));
+		RunEnvironment.getInstance().endAt(params.stopAt * params.periods);
 
 		return context;
 	}
 
+	/*
+	 * The builder is not told when the batch ends, and a batch ends with its
+	 * JVM, so sink is closed then
+	 */
+	private static void closeAtExit(final OutputSink sink) {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				try {
+					sink.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
 }
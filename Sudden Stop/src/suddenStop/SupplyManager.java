@@ -1,18 +1,37 @@
 package suddenStop;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 import cern.jet.random.*;
+import cern.jet.random.engine.RandomEngine;
 import repast.simphony.context.Context;
 import repast.simphony.engine.schedule.*;
-import repast.simphony.random.*;
-import repast.simphony.util.collections.IndexedIterable;
-import static repast.simphony.essentials.RepastEssentials.*;
+import static repast.simphony.essentials.RepastEssentials.GetTickCount;
 
 public class SupplyManager {
 
-	private Context<Object> context;
+	public final ModelParameters params;
+
+	private FirmPopulation firms;
+	private IndustryTotals totals = new IndustryTotals();
+	private FirmPhaseRunner runner;
+	private double[] innovationErrors = new double[0];
+
+	// Not copied to forks or checkpoints
+	private List<FirmLifecycleListener> listeners = new ArrayList<FirmLifecycleListener>(
+			1);
+
+	// Firm IDs are unique within a run
+	private long firmIDCounter = 1;
 
 	public Normal entrantsNormal = null;
 	public Normal innovationErrorNormal = null;
@@ -23,77 +42,236 @@ public class SupplyManager {
 	public Uniform targetLeverageDistrib = null;
 	public Uniform learningRateDistrib = null;
 	
-	public int[] timeCohortLimits = null;
-
 	public double price = 0;
 
+	public MarketConditions market = null;
+
 	public double dead = 0;
 
 	public int bornFirms = 0;
 
 	public double totalFirms = 1.0;
 
+	// Quantity offered this tick, the one that set the price
 	public double totalQuantityPerPeriod = 0;
 
-	public SupplyManager(Context<Object> context) {
+	/*
+	 * Quantity of the firms that stay after this tick exits. Market shares
+	 * are relative to it, so they add up to one
+	 */
+	public double mktQuantityPerPeriod = 0;
 
-		this.context = context;
-		context.add(this);
+	/*
+	 * Every distribution draws from generator. guiContext is the context
+	 * where firms are added to be probed, or null when there is no GUI
+	 */
+	public SupplyManager(ModelParameters params, RandomEngine generator,
+			Context<Object> guiContext) {
 
-		price = (Double) GetParameter("priceOfSubstitute");
+		this.params = params;
 
-		double entrantsMean = (Double) GetParameter("entrantsMean");
-		entrantsNormal = RandomHelper.createNormal(entrantsMean,
-				(Double) GetParameter("entrantsStdDev") * entrantsMean);
+		price = params.priceOfSubstitute;
 
-		innovationErrorNormal = RandomHelper.createNormal(1.0,
-				(Double) GetParameter("innovationErrorStdDev"));
+		double entrantsMean = params.entrantsMean;
+		entrantsNormal = new Normal(entrantsMean, params.entrantsStdDev
+				* entrantsMean, generator);
 
-		/* Read Time Cohorts limits */
-		String[] tmp = ((String) GetParameter("timeCohorts")).split(";");
-		timeCohortLimits = new int[tmp.length];
-		for (int i = 0; i < tmp.length; i++) {
-			timeCohortLimits[i] = new Integer(tmp[i]);
-		}
+		innovationErrorNormal = new Normal(1.0,
+				params.innovationErrorStdDev, generator);
 
 		/* Create distributions for initial variables of firms */
 
 		// FIRST UNIT COST
-		double fUCMean = (Double) GetParameter("firstUnitCostMean");
-		fUCDistrib = RandomHelper.createNormal(fUCMean,
-				(Double) GetParameter("firstUnitCostStdDev") * fUCMean);
+		double fUCMean = params.firstUnitCostMean;
+		fUCDistrib = new Normal(fUCMean, params.firstUnitCostStdDev
+				* fUCMean, generator);
 
 		// INITIAL EQUITY
-		double iniEquityMean = (Double) GetParameter("iniEquityMean");
-		iniEquityDistrib = RandomHelper.createNormal(iniEquityMean,
-				(Double) GetParameter("iniEquityStdDev") * iniEquityMean);
+		double iniEquityMean = params.iniEquityMean;
+		iniEquityDistrib = new Normal(iniEquityMean, params.iniEquityStdDev
+				* iniEquityMean, generator);
 
 		// RD_EFFICIENCY
-		rDEfficiencyDistrib = RandomHelper.createUniform(
-				(Double) GetParameter("rDEfficiencyMin"),
-				(Double) GetParameter("rDEfficiencyMax"));
+		rDEfficiencyDistrib = new Uniform(params.rDEfficiencyMin,
+				params.rDEfficiencyMax, generator);
 
 		// TARGET_LEVERAGE
-		targetLeverageDistrib = RandomHelper.createUniform(
-				(Double) GetParameter("leverageMin"),
-				(Double) GetParameter("leverageMax"));
+		targetLeverageDistrib = new Uniform(params.leverageMin,
+				params.leverageMax, generator);
 
 		// LEARNING_RATE
-		learningRateDistrib = RandomHelper.createUniform(
-				(Double) GetParameter("learningRateMin"),
-				(Double) GetParameter("learningRateMax"));
+		learningRateDistrib = new Uniform(params.learningRateMin,
+				params.learningRateMax, generator);
+
+		createPopulation(guiContext);
+
+	}
+
+	private void createPopulation(Context<Object> guiContext) {
+
+		runner = new FirmPhaseRunner(params.workerThreads);
+
+		firms = new ObjectFirmPopulation(this, new FirmRegistry(), guiContext,
+				runner, totals);
+
+	}
+
+	/*
+	 * Copies the whole state of src, random generator included, to go on
+	 * with params. They should only differ from the ones of src in values
+	 * that haven't had any effect yet, so the copy goes on as a run with
+	 * params from the start would. The copy has no GUI
+	 */
+	public SupplyManager(SupplyManager src, ModelParameters params) {
+
+		this.params = params;
+
+		price = src.price;
+		market = src.market;
+		dead = src.dead;
+		bornFirms = src.bornFirms;
+		totalFirms = src.totalFirms;
+		totalQuantityPerPeriod = src.totalQuantityPerPeriod;
+		mktQuantityPerPeriod = src.mktQuantityPerPeriod;
+		firmIDCounter = src.firmIDCounter;
+
+		try {
+			setDistributions(deserialize(serialize(src.getDistributions())));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		runner = new FirmPhaseRunner(params.workerThreads);
+
+		totals.set(src.totals.getQuantityPerPeriod(), src.totals
+				.getCapital(), src.totals.getFirms());
+		firms = src.firms.copy(this, runner, totals);
+
+	}
+
+	/*
+	 * Restores the state written by writeTo to go on with params. As with the
+	 * copy constructor, params should only differ from the ones of the
+	 * checkpoint in values that haven't had any effect yet
+	 */
+	SupplyManager(ModelParameters params, DataInput in) throws IOException {
 
-		Firm.supplyManager = this;
+		this.params = params;
+
+		double tick = in.readDouble();
+		market = (tick > 0) ? new MarketConditions(params, tick) : null;
+
+		price = in.readDouble();
+		dead = in.readDouble();
+		bornFirms = in.readInt();
+		totalFirms = in.readDouble();
+		totalQuantityPerPeriod = in.readDouble();
+		mktQuantityPerPeriod = in.readDouble();
+		firmIDCounter = in.readLong();
+
+		byte[] d = new byte[in.readInt()];
+		in.readFully(d);
+		setDistributions(deserialize(d));
+
+		createPopulation(null);
+
+		totals.set(in.readDouble(), in.readDouble(), in.readInt());
+
+		int n = in.readInt();
+		Firm f = new Firm(this);
+		for (int i = 0; i < n; i++) {
+			f.readFrom(in);
+			firms.addCopy(f);
+		}
 
 	}
 
+	/*
+	 * Writes the whole state, random generator included, for a checkpoint.
+	 * The market conditions are built again from the tick
+	 */
+	void writeTo(DataOutput out) throws IOException {
+
+		out.writeDouble(market == null ? 0.0 : market.tick);
+
+		out.writeDouble(price);
+		out.writeDouble(dead);
+		out.writeInt(bornFirms);
+		out.writeDouble(totalFirms);
+		out.writeDouble(totalQuantityPerPeriod);
+		out.writeDouble(mktQuantityPerPeriod);
+		out.writeLong(firmIDCounter);
+
+		byte[] d = serialize(getDistributions());
+		out.writeInt(d.length);
+		out.write(d);
+
+		out.writeDouble(totals.getQuantityPerPeriod());
+		out.writeDouble(totals.getCapital());
+		out.writeInt(totals.getFirms());
+
+		out.writeInt(firms.size());
+		for (Firm f : firms)
+			f.writeTo(out);
+
+	}
+
+	/*
+	 * The distributions are always serialized together, so the ones read
+	 * back share a single generator, and keep any value they have cached
+	 */
+	private AbstractDistribution[] getDistributions() {
+		return new AbstractDistribution[] { entrantsNormal,
+				innovationErrorNormal, fUCDistrib, iniEquityDistrib,
+				rDEfficiencyDistrib, targetLeverageDistrib,
+				learningRateDistrib };
+	}
+
+	private void setDistributions(Object o) {
+		AbstractDistribution[] d = (AbstractDistribution[]) o;
+
+		entrantsNormal = (Normal) d[0];
+		innovationErrorNormal = (Normal) d[1];
+		fUCDistrib = (Normal) d[2];
+		iniEquityDistrib = (Normal) d[3];
+		rDEfficiencyDistrib = (Uniform) d[4];
+		targetLeverageDistrib = (Uniform) d[5];
+		learningRateDistrib = (Uniform) d[6];
+	}
+
+	private static byte[] serialize(Serializable o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+
+		return bytes.toByteArray();
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException {
+		try {
+			return new ObjectInputStream(new ByteArrayInputStream(bytes))
+					.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
 	@ScheduledMethod(start = 1d, interval = 1d)
 	public void step() {
+		step(GetTickCount());
+	}
+
+	/*
+	 * Runs a step of the model at tick. Used directly when there is no Repast
+	 * schedule
+	 */
+	public void step(double tick) {
+
+		market = new MarketConditions(params, tick);
 
 		// Move to current State. Applies planned decision
-		IndexedIterable<Object> firms = context.getObjects(Firm.class);
-		for (Object f : firms)
-			((Firm) f).moveToNextState();
+		firms.moveToNextState(drawInnovationErrors(totals.getFirms()));
 
 		manageEntry();
 
@@ -105,26 +283,56 @@ public class SupplyManager {
 
 	}
 
+	/*
+	 * Errors are drawn sequentially in firm order, so the result doesn't
+	 * depend on how many threads apply them
+	 */
+	private double[] drawInnovationErrors(int n) {
+
+		if (innovationErrors.length < n)
+			innovationErrors = new double[Math.max(n, 2 * innovationErrors.length)];
+
+		for (int i = 0; i < n; i++)
+			innovationErrors[i] = innovationErrorNormal.nextDouble();
+
+		return innovationErrors;
+	}
+
+	long nextFirmID() {
+		return firmIDCounter++;
+	}
+
+	public void addLifecycleListener(FirmLifecycleListener l) {
+		listeners.add(l);
+	}
+
+	void firmBorn(Firm f) {
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).firmBorn(f, market.tick);
+	}
+
+	void firmExited(Firm f) {
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).firmExited(f, market.tick, f.exitCause);
+	}
+
+	@ScheduledMethod(start = ScheduleParameters.END)
+	public void shutdownRunner() {
+		runner.shutdown();
+	}
+
 	private void manageEntry() {
 
 		bornFirms = 0;
 
 		double potentialEntrantsPerPeriod = entrantsNormal.nextDouble()
-				/ (Integer) GetParameter("periods");
+				/ params.periods;
 
 		if (potentialEntrantsPerPeriod > 0) {
 
-			Firm tmpFirm;
-
 			for (int i = 1; i <= potentialEntrantsPerPeriod; i++) {
 
-				tmpFirm = new Firm(context);
-
-				// Destroy if not profitable
-				if (!tmpFirm.estimateResponseToDemand(price)) {
-					tmpFirm.killShadowFirms();
-					RemoveAgentFromModel(tmpFirm);
-				} else {
+				if (firms.addEntrant(price)) {
 					bornFirms++;
 				}
 
@@ -134,61 +342,34 @@ public class SupplyManager {
 
 	private void processOffers() {
 
-		IndexedIterable<Object> firms = context.getObjects(Firm.class);
-		Firm f;
-
-		totalQuantityPerPeriod = 0.0;
-		for (Object o : firms) {
-			f = (Firm) o;
-			totalQuantityPerPeriod += f.getQuantityPerPeriod();
-		}
-
-		price = Demand.price(totalQuantityPerPeriod);
+		totalQuantityPerPeriod = totals.getQuantityPerPeriod();
 
-		for (Object o : context.getObjects(Firm.class)) {
-			f = (Firm) o;
+		price = Demand.price(market, totalQuantityPerPeriod);
 
-			f.processResponseToDemand(price);
+		firms.processResponseToDemand(price);
 
-		}
 	}
 
 	private void killToBeKilledFirms() {
 
-		IndexedIterable<Object> firms = context.getObjects(Firm.class);
-		List<Firm> toKill = new ArrayList<Firm>(firms.size());
-
-		for (Object o : context.getObjects(Firm.class)) {
-			Firm f = (Firm) o;
-			if (f.isToBeKilled()) {
-				toKill.add(f);
-			}
-		}
+		dead = firms.killToBeKilledFirms();
 
-		dead = toKill.size();
-		for (Firm f : toKill) {
-			f.killShadowFirms();
-			RemoveAgentFromModel(f);
-		}
+		totalFirms = totals.getFirms();
+		mktQuantityPerPeriod = totals.getQuantityPerPeriod();
 
-		firms = context.getObjects(Firm.class);
-		totalFirms = firms.size();
-/*
-		totalQuantityPerPeriod = 0.0;
-		for (Object o : firms) {
-			Firm f = (Firm) o;
-			totalQuantityPerPeriod += f.getQuantityPerPeriod();
-		}
-*/
 	}
 
 	private void planNextYear() {
-		IndexedIterable<Object> firms = context.getObjects(Firm.class);
 
-		for (Object f : firms) {
-			((Firm) f).planNextYear(price);
-		}
+		firms.planNextYear(price);
+
+	}
 
+	/*
+	 * The firms alive
+	 */
+	public Iterable<Firm> firms() {
+		return firms;
 	}
 
 	public String toString() {
@@ -213,4 +394,12 @@ public class SupplyManager {
 		return totalFirms;
 	}
 
+	public double getTotalCapital() {
+		return totals.getCapital();
+	}
+
+	public double getMktShare(double quantityPerPeriod) {
+		return quantityPerPeriod / mktQuantityPerPeriod;
+	}
+
 }
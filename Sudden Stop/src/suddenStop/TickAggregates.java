@@ -0,0 +1,145 @@
+package suddenStop;
+
+import java.util.Arrays;
+
+/*
+ * Statistics of the firms of a tick by bucket, kept instead of a row per
+ * firm. Buckets are every firm, the leverage cohorts and the time cohorts,
+ * as the cohorts of the GUI. For each firm column chosen in firmColumns
+ * there is its sum, mean and population variance, updated as Welford does.
+ */
+class TickAggregates {
+
+	static final int LEV_COHORTS = 3;
+
+	final FirmColumn[] columns;
+	final int buckets;
+	private final int timeCohorts;
+
+	// Per bucket
+	final int[] firms;
+	final int[] births;
+	final int[] exits;
+
+	// Per bucket and column, at bucket * columns.length + column
+	final double[] sum;
+	private final double[] mean;
+	private final double[] m2;
+
+	private final double[] values;
+
+	TickAggregates(FirmColumn[] columns, ModelParameters params) {
+		this.columns = columns;
+		timeCohorts = params.timeCohortLimits.length + 1;
+		buckets = 1 + LEV_COHORTS + timeCohorts;
+
+		firms = new int[buckets];
+		births = new int[buckets];
+		exits = new int[buckets];
+		sum = new double[buckets * columns.length];
+		mean = new double[buckets * columns.length];
+		m2 = new double[buckets * columns.length];
+		values = new double[columns.length];
+	}
+
+	/*
+	 * Names of the buckets: All, Lev1 to Lev3 and Tim1 to TimN
+	 */
+	static String[] bucketNames(ModelParameters params) {
+		String[] names = new String[1 + LEV_COHORTS
+				+ params.timeCohortLimits.length + 1];
+
+		int b = 0;
+		names[b++] = "All";
+		for (int i = 1; i <= LEV_COHORTS; i++)
+			names[b++] = "Lev" + i;
+		for (int i = 1; b < names.length; i++)
+			names[b++] = "Tim" + i;
+
+		return names;
+	}
+
+	/*
+	 * Names of the statistics of columns, in row order
+	 */
+	static String[] statNames(FirmColumn[] columns) {
+		String[] names = new String[3 * columns.length];
+
+		for (int c = 0; c < columns.length; c++) {
+			names[3 * c] = columns[c].columnName + "Sum";
+			names[3 * c + 1] = columns[c].columnName + "Mean";
+			names[3 * c + 2] = columns[c].columnName + "Var";
+		}
+
+		return names;
+	}
+
+	void clear() {
+		Arrays.fill(firms, 0);
+		Arrays.fill(births, 0);
+		Arrays.fill(exits, 0);
+		Arrays.fill(sum, 0.0);
+		Arrays.fill(mean, 0.0);
+		Arrays.fill(m2, 0.0);
+	}
+
+	void addFirm(Firm f) {
+		for (int c = 0; c < columns.length; c++)
+			values[c] = columns[c].get(f);
+
+		add(0, values);
+		add(levBucket(f), values);
+		add(timBucket(f), values);
+	}
+
+	void addBirth(Firm f) {
+		births[0]++;
+		births[levBucket(f)]++;
+		births[timBucket(f)]++;
+	}
+
+	void addExit(Firm f) {
+		exits[0]++;
+		exits[levBucket(f)]++;
+		exits[timBucket(f)]++;
+	}
+
+	/*
+	 * NaN for an empty bucket, as the variance
+	 */
+	double mean(int bucket, int column) {
+		return (firms[bucket] > 0) ? mean[bucket * columns.length + column]
+				: Double.NaN;
+	}
+
+	double variance(int bucket, int column) {
+		int n = firms[bucket];
+		return (n > 0) ? m2[bucket * columns.length + column] / n
+				: Double.NaN;
+	}
+
+	private void add(int bucket, double[] values) {
+		int n = ++firms[bucket];
+		int base = bucket * columns.length;
+
+		for (int c = 0; c < values.length; c++) {
+			double x = values[c];
+			double delta = x - mean[base + c];
+			sum[base + c] += x;
+			mean[base + c] += delta / n;
+			m2[base + c] += delta * (x - mean[base + c]);
+		}
+	}
+
+	/*
+	 * Leverage outside [leverageMin, leverageMax) goes to the closest cohort
+	 */
+	private int levBucket(Firm f) {
+		return Math.max(1, Math.min(LEV_COHORTS, f.getLevCohort(LEV_COHORTS)));
+	}
+
+	private int timBucket(Firm f) {
+		return LEV_COHORTS + f.getTimeCohort(timeCohorts);
+	}
+
+}
@@ -0,0 +1,120 @@
+package suddenStop;
+
+import java.util.Arrays;
+
+/*
+ * The rows of a tick copied out of the model, so they can be written by
+ * another thread while the model goes on. Births and exits are added as they
+ * happen during the step, and the rest when the tick is saved. Buffers grow
+ * as needed and are reused from tick to tick.
+ */
+class TickRecord {
+
+	static final String[] CONST_NAMES = { "InitialFUC", "RDEfficiency",
+			"TargetLeverage", "LearningRate", "Born" };
+	static final int CONST_COLUMNS = CONST_NAMES.length;
+
+	// Per tick columns, in firmData order
+	final FirmColumn[] columns;
+
+	double tick;
+	double price;
+	double totalQuantity;
+
+	// Firms born this tick
+	int newFirms = 0;
+	long[] newFirmIDs = new long[16];
+	double[] newFirmData = new double[16 * CONST_COLUMNS];
+
+	// Firms that left the industry this tick
+	int exits = 0;
+	long[] exitFirmIDs = new long[16];
+	ExitCause[] exitCauses = new ExitCause[16];
+
+	// Statistics of the firms instead of their rows, if only they are saved
+	TickAggregates aggregates = null;
+
+	// Distributions of sketchColumns over every firm alive, if any
+	FirmColumn[] sketchColumns = null;
+	QuantileSketch[] sketches = null;
+
+	// Every firm alive
+	int firms = 0;
+	long[] firmIDs = new long[64];
+	double[] firmData;
+
+	TickRecord(FirmColumn[] columns) {
+		this.columns = columns;
+		firmData = new double[64 * columns.length];
+	}
+
+	void clear() {
+		newFirms = 0;
+		exits = 0;
+		firms = 0;
+		if (aggregates != null)
+			aggregates.clear();
+		if (sketches != null) {
+			for (QuantileSketch s : sketches)
+				s.clear();
+		}
+	}
+
+	void setMarket(double tick, SupplyManager sm) {
+		this.tick = tick;
+		price = sm.price;
+		totalQuantity = sm.totalQuantityPerPeriod;
+	}
+
+	void addNewFirm(Firm f) {
+		if (newFirms == newFirmIDs.length) {
+			newFirmIDs = Arrays.copyOf(newFirmIDs, 2 * newFirms);
+			newFirmData = Arrays.copyOf(newFirmData, 2 * newFirms
+					* CONST_COLUMNS);
+		}
+
+		int i = newFirms * CONST_COLUMNS;
+		newFirmIDs[newFirms++] = f.agentIntID;
+		newFirmData[i++] = f.getInitialFUC();
+		newFirmData[i++] = f.getRDEfficiency();
+		newFirmData[i++] = f.getTargetLeverage();
+		newFirmData[i++] = f.getLearningRate();
+		newFirmData[i] = f.getBornInYears();
+	}
+
+	/*
+	 * Firm IDs are given in increasing order, so the births of a tick are
+	 * sorted
+	 */
+	boolean isNewFirm(long id) {
+		return Arrays.binarySearch(newFirmIDs, 0, newFirms, id) >= 0;
+	}
+
+	void addExit(Firm f, ExitCause cause) {
+		if (exits == exitFirmIDs.length) {
+			exitFirmIDs = Arrays.copyOf(exitFirmIDs, 2 * exits);
+			exitCauses = Arrays.copyOf(exitCauses, 2 * exits);
+		}
+
+		exitFirmIDs[exits] = f.agentIntID;
+		exitCauses[exits++] = cause;
+	}
+
+	void sketchFirm(Firm f) {
+		for (int c = 0; c < sketches.length; c++)
+			sketches[c].update(sketchColumns[c].get(f));
+	}
+
+	void addFirm(Firm f) {
+		if (firms == firmIDs.length) {
+			firmIDs = Arrays.copyOf(firmIDs, 2 * firms);
+			firmData = Arrays.copyOf(firmData, 2 * firms * columns.length);
+		}
+
+		int i = firms * columns.length;
+		firmIDs[firms++] = f.agentIntID;
+		for (FirmColumn c : columns)
+			firmData[i++] = c.get(f);
+	}
+
+}
@@ -0,0 +1,162 @@
+package suddenStop;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Reads back the rows of trajectory blocks framed as in TrajectoryFile, one
+ * row at a time. Only the block being read is held in memory, so a file of
+ * any size is decoded in constant memory.
+ *
+ * Blocks are read until an end tag or the end of the input, so a file still
+ * being written can be read up to its last complete block.
+ */
+public class TrajectoryDecoder implements Closeable {
+
+	private DataInputStream in;
+	private String[] names;
+
+	private long firm;
+	private int remaining = 0;
+
+	private byte[] block = new byte[256];
+	private int bits;
+
+	private long tick;
+	private long delta;
+	private long[] value;
+	private int[] leading;
+	private int[] trailing;
+
+	TrajectoryDecoder(DataInputStream in, String[] names) {
+		this.in = in;
+		this.names = names;
+		value = new long[names.length];
+		leading = new int[names.length];
+		trailing = new int[names.length];
+	}
+
+	public List<String> columns() {
+		return Arrays.asList(names);
+	}
+
+	/*
+	 * Moves to the next row. False when there are no more
+	 */
+	public boolean next() throws IOException {
+		if (remaining == 0) {
+			if (!nextBlock())
+				return false;
+			readFirst();
+		} else {
+			readNext();
+		}
+
+		remaining--;
+		return true;
+	}
+
+	public long firm() {
+		return firm;
+	}
+
+	public double tick() {
+		return tick;
+	}
+
+	public double value(int column) {
+		return Double.longBitsToDouble(value[column]);
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private boolean nextBlock() throws IOException {
+		int tag;
+		try {
+			tag = in.readUnsignedByte();
+		} catch (EOFException end) {
+			return false;
+		}
+		if (tag != TrajectoryFile.BLOCK)
+			return false;
+
+		firm = in.readLong();
+		remaining = in.readInt();
+		int length = in.readInt();
+		if (length > block.length)
+			block = new byte[Math.max(length, 2 * block.length)];
+		in.readFully(block, 0, length);
+		bits = 0;
+
+		return true;
+	}
+
+	private void readFirst() {
+		tick = readBits(64);
+		delta = 0;
+		for (int c = 0; c < value.length; c++) {
+			value[c] = readBits(64);
+			leading[c] = -1;
+		}
+	}
+
+	private void readNext() {
+		delta += readDeltaOfDelta();
+		tick += delta;
+
+		for (int c = 0; c < value.length; c++) {
+			if (readBits(1) == 0)
+				continue;
+
+			if (readBits(1) == 1) {
+				leading[c] = (int) readBits(5);
+				int significant = (int) readBits(6) + 1;
+				trailing[c] = 64 - leading[c] - significant;
+			}
+			value[c] ^= readBits(64 - leading[c] - trailing[c]) << trailing[c];
+		}
+	}
+
+	private long readDeltaOfDelta() {
+		if (readBits(1) == 0)
+			return 0;
+		else if (readBits(1) == 0)
+			return signed(readBits(7), 7);
+		else if (readBits(1) == 0)
+			return signed(readBits(9), 9);
+		else if (readBits(1) == 0)
+			return signed(readBits(12), 12);
+		else
+			return readBits(64);
+	}
+
+	private static long signed(long v, int n) {
+		return (v << (64 - n)) >> (64 - n);
+	}
+
+	/*
+	 * Reads n bits, highest first
+	 */
+	private long readBits(int n) {
+		long v = 0;
+
+		while (n > 0) {
+			int left = 8 - (bits & 7);
+			int take = Math.min(left, n);
+			int chunk = ((block[bits >> 3] & 0xFF) >>> (left - take))
+					& ((1 << take) - 1);
+			v = (v << take) | chunk;
+			bits += take;
+			n -= take;
+		}
+
+		return v;
+	}
+
+}
@@ -0,0 +1,166 @@
+package suddenStop;
+
+import java.util.Arrays;
+
+/*
+ * Encodes consecutive rows of a firm as in Gorilla (Pelkonen et al., 2015).
+ * The first row is stored whole. After it, the tick is stored as the change
+ * of its delta, which is a single bit while rows come at a steady interval,
+ * and each column as the XOR with its previous value. Values that change
+ * little share the sign, the exponent and the first bits of the mantissa,
+ * so only the bits that differ are stored, reusing the previous leading and
+ * trailing zero counts when they fit.
+ *
+ * Ticks must be whole numbers. TrajectoryDecoder reads the rows back.
+ */
+class TrajectoryEncoder {
+
+	final int columns;
+
+	long firm;
+	int points = 0;
+	double firstTick;
+	double lastTick;
+
+	private byte[] bytes = new byte[256];
+	private int bits = 0;
+
+	private long prevTick;
+	private long prevDelta;
+	private long[] prevValue;
+	private int[] prevLeading;
+	private int[] prevTrailing;
+
+	TrajectoryEncoder(int columns) {
+		this.columns = columns;
+		prevValue = new long[columns];
+		prevLeading = new int[columns];
+		prevTrailing = new int[columns];
+	}
+
+	/*
+	 * Starts a new block of firm
+	 */
+	void reset(long firm) {
+		Arrays.fill(bytes, 0, length(), (byte) 0);
+		this.firm = firm;
+		points = 0;
+		bits = 0;
+	}
+
+	/*
+	 * Adds the row of tick whose columns start at data[offset]
+	 */
+	void add(double tick, double[] data, int offset) {
+		long t = (long) tick;
+		if (t != tick)
+			throw new IllegalArgumentException("Tick " + tick
+					+ " is not a whole number");
+
+		if (points == 0) {
+			firstTick = tick;
+			writeBits(t, 64);
+			prevDelta = 0;
+			for (int c = 0; c < columns; c++) {
+				prevValue[c] = Double.doubleToRawLongBits(data[offset + c]);
+				prevLeading[c] = -1;
+				writeBits(prevValue[c], 64);
+			}
+		} else {
+			long delta = t - prevTick;
+			writeDeltaOfDelta(delta - prevDelta);
+			prevDelta = delta;
+			for (int c = 0; c < columns; c++)
+				writeValue(c, Double.doubleToRawLongBits(data[offset + c]));
+		}
+
+		prevTick = t;
+		lastTick = tick;
+		points++;
+	}
+
+	/*
+	 * 0, or 10, 110 and 1110 followed by 7, 9 and 12 bits, or 1111 and the
+	 * whole value
+	 */
+	private void writeDeltaOfDelta(long dod) {
+		if (dod == 0) {
+			writeBits(0, 1);
+		} else if (dod >= -64 && dod < 64) {
+			writeBits(2, 2);
+			writeBits(dod, 7);
+		} else if (dod >= -256 && dod < 256) {
+			writeBits(6, 3);
+			writeBits(dod, 9);
+		} else if (dod >= -2048 && dod < 2048) {
+			writeBits(14, 4);
+			writeBits(dod, 12);
+		} else {
+			writeBits(15, 4);
+			writeBits(dod, 64);
+		}
+	}
+
+	/*
+	 * 0 if the value did not change. 10 and the bits that differ, within the
+	 * previous leading and trailing zeros, or 11, 5 bits of leading zeros, 6
+	 * of the length minus one and the bits that differ
+	 */
+	private void writeValue(int c, long value) {
+		long xor = value ^ prevValue[c];
+		prevValue[c] = value;
+
+		if (xor == 0) {
+			writeBits(0, 1);
+			return;
+		}
+
+		int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		int trailing = Long.numberOfTrailingZeros(xor);
+
+		if (prevLeading[c] >= 0 && leading >= prevLeading[c]
+				&& trailing >= prevTrailing[c]) {
+			writeBits(2, 2);
+			writeBits(xor >>> prevTrailing[c], 64 - prevLeading[c]
+					- prevTrailing[c]);
+		} else {
+			int significant = 64 - leading - trailing;
+			writeBits(3, 2);
+			writeBits(leading, 5);
+			writeBits(significant - 1, 6);
+			writeBits(xor >>> trailing, significant);
+			prevLeading[c] = leading;
+			prevTrailing[c] = trailing;
+		}
+	}
+
+	/*
+	 * Writes the n lowest bits of value, highest first
+	 */
+	private void writeBits(long value, int n) {
+		int needed = (bits + n + 7) >> 3;
+		if (needed > bytes.length)
+			bytes = Arrays.copyOf(bytes, Math.max(needed, 2 * bytes.length));
+
+		while (n > 0) {
+			int free = 8 - (bits & 7);
+			int take = Math.min(free, n);
+			int chunk = (int) (value >>> (n - take)) & ((1 << take) - 1);
+			bytes[bits >> 3] |= chunk << (free - take);
+			bits += take;
+			n -= take;
+		}
+	}
+
+	/*
+	 * The encoded block is the first length() bytes
+	 */
+	byte[] bytes() {
+		return bytes;
+	}
+
+	int length() {
+		return (bits + 7) >> 3;
+	}
+
+}
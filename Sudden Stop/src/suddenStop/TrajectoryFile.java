@@ -0,0 +1,172 @@
+package suddenStop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/*
+ * The rows per firm of a run as compressed trajectories, in place of the
+ * IndividualFirmsPerTick table. Each block holds up to
+ * FirmTrajectories.BLOCK_POINTS rows of a firm, encoded by TrajectoryEncoder.
+ *
+ * The file starts with a magic number, a version and the column names.
+ * Each block is a tag, the firm, its rows, its length in bytes and the
+ * encoded rows. After an end tag comes the index: the number of blocks, and
+ * the firm, first and last tick and offset of each, followed by the offset
+ * of the index and the magic number again. read uses the index to decode a
+ * firm without scanning the others; scan decodes every block in file order.
+ */
+public class TrajectoryFile extends FirmTrajectories implements Closeable {
+
+	static final String NAME = "IndividualFirmsPerTick.traj";
+
+	static final int BLOCK = 1;
+	static final int END = 0;
+
+	private static final int MAGIC = 0x53535452; // SSTR
+	private static final int VERSION = 1;
+
+	private DataOutputStream out;
+	private long offset;
+
+	private ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+	private DataOutputStream index = new DataOutputStream(indexBytes);
+	private int blocks = 0;
+
+	TrajectoryFile(File runDir, FirmColumn[] columns) throws IOException {
+
+		super(columns.length);
+
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(runDir, NAME)), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeByte(columns.length);
+		for (FirmColumn c : columns)
+			out.writeUTF(c.columnName);
+		offset = out.size();
+
+	}
+
+	void write(TickRecord r) throws IOException {
+		add(r);
+	}
+
+	protected void writeBlock(TrajectoryEncoder block) throws IOException {
+		index.writeLong(block.firm);
+		index.writeDouble(block.firstTick);
+		index.writeDouble(block.lastTick);
+		index.writeLong(offset);
+		blocks++;
+
+		out.writeByte(BLOCK);
+		out.writeLong(block.firm);
+		out.writeInt(block.points);
+		out.writeInt(block.length());
+		out.write(block.bytes(), 0, block.length());
+		offset += 17 + block.length();
+	}
+
+	public void close() throws IOException {
+		try {
+			finish();
+
+			out.writeByte(END);
+			long indexAt = offset + 1;
+			out.writeInt(blocks);
+			indexBytes.writeTo(out);
+			out.writeLong(indexAt);
+			out.writeInt(MAGIC);
+		} finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * Decodes every row of f, block by block in the order they were written
+	 */
+	public static TrajectoryDecoder scan(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(f), 1 << 16));
+		try {
+			return new TrajectoryDecoder(in, readHeader(in, f));
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Decodes the rows of firm in f, in tick order. Only its blocks are read
+	 */
+	public static TrajectoryDecoder read(File f, long firm)
+			throws IOException {
+
+		RandomAccessFile file = new RandomAccessFile(f, "r");
+		try {
+			String[] names = readHeader(file, f);
+
+			file.seek(file.length() - 12);
+			long indexAt = file.readLong();
+			if (file.readInt() != MAGIC)
+				throw new IOException(f + " has no index, use scan");
+
+			file.seek(indexAt);
+			int count = file.readInt();
+			long[] offsets = new long[count];
+			int found = 0;
+			for (int b = 0; b < count; b++) {
+				long blockFirm = file.readLong();
+				file.skipBytes(16);
+				long blockAt = file.readLong();
+				if (blockFirm == firm)
+					offsets[found++] = blockAt;
+			}
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream blocks = new DataOutputStream(bytes);
+			for (int b = 0; b < found; b++) {
+				file.seek(offsets[b]);
+				byte[] header = new byte[17];
+				file.readFully(header);
+				byte[] data = new byte[ByteBuffer.wrap(header).getInt(13)];
+				file.readFully(data);
+				blocks.write(header);
+				blocks.write(data);
+			}
+			blocks.writeByte(END);
+
+			return new TrajectoryDecoder(new DataInputStream(
+					new ByteArrayInputStream(bytes.toByteArray())), names);
+		} finally {
+			file.close();
+		}
+
+	}
+
+	private static String[] readHeader(DataInput in, File f)
+			throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException(f + " is not a trajectory file");
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException(f + " has unknown version " + version);
+
+		String[] names = new String[in.readUnsignedByte()];
+		for (int c = 0; c < names.length; c++)
+			names[c] = in.readUTF();
+		return names;
+	}
+
+}
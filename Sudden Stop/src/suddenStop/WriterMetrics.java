@@ -0,0 +1,83 @@
+package suddenStop;
+
+/*
+ * Counters of a background writer. They are updated by the writer thread
+ * and the simulation thread, and can be read from any thread.
+ */
+public class WriterMetrics {
+
+	private volatile long writes = 0;
+	private volatile long writeNanos = 0;
+	private volatile long maxWriteNanos = 0;
+	private volatile long rows = 0;
+	private volatile int maxQueueDepth = 0;
+	private volatile long stalls = 0;
+	private volatile long stalledNanos = 0;
+
+	// Updated by the writer thread
+
+	/*
+	 * A tick of rows was written. Its time includes any flush the output
+	 * made, so flushes show as peaks
+	 */
+	void written(int rows, long nanos) {
+		writes++;
+		this.rows += rows;
+		writeNanos += nanos;
+		if (nanos > maxWriteNanos)
+			maxWriteNanos = nanos;
+	}
+
+	// Updated by the simulation thread
+
+	void queued(int depth) {
+		if (depth > maxQueueDepth)
+			maxQueueDepth = depth;
+	}
+
+	void stalled(long nanos) {
+		stalls++;
+		stalledNanos += nanos;
+	}
+
+	public long getWrites() {
+		return writes;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public double getMeanWriteMillis() {
+		return (writes == 0) ? 0.0 : writeNanos / 1e6 / writes;
+	}
+
+	public double getMaxWriteMillis() {
+		return maxWriteNanos / 1e6;
+	}
+
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/*
+	 * Times the simulation had to wait because the queue was full
+	 */
+	public long getStalls() {
+		return stalls;
+	}
+
+	public double getStalledMillis() {
+		return stalledNanos / 1e6;
+	}
+
+	public String toString() {
+		return rows + " rows in " + writes + " ticks (mean "
+				+ String.format("%.2f", getMeanWriteMillis()) + " ms, max "
+				+ String.format("%.2f", getMaxWriteMillis())
+				+ " ms), max queue depth " + maxQueueDepth + ", " + stalls
+				+ " stalls (" + String.format("%.0f", getStalledMillis())
+				+ " ms)";
+	}
+
+}
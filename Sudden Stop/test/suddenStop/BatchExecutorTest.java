@@ -0,0 +1,89 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchExecutorTest {
+
+	private File dir;
+
+	@Before
+	public void createDir() throws IOException {
+		dir = TestModels.tempDir("batch");
+	}
+
+	@After
+	public void deleteDir() {
+		TestModels.delete(dir);
+	}
+
+	@Test
+	public void forkedRunsSaveTheSameDataAsRunsAlone() throws IOException {
+		checkForkedData(false);
+	}
+
+	@Test
+	public void forkedRunsSaveTheSameTrajectoriesAsRunsAlone()
+			throws IOException {
+		checkForkedData(true);
+	}
+
+	private void checkForkedData(boolean trajectories) throws IOException {
+		List<Map<String, Object>> runs = new ArrayList<Map<String, Object>>();
+		for (double magnitude : new double[] { 0.2, 0.5, 0.8 })
+			runs.add(TestModels.values("randomSeed", 3,
+					"suddenStopMagnitude", magnitude, "firmTrajectories",
+					trajectories));
+
+		File alone = save(runs, false, new File(dir, "alone"));
+		File forked = save(runs, true, new File(dir, "forked"));
+
+		for (int run = 1; run <= runs.size(); run++) {
+			File a = new File(alone, "run-" + run);
+			File f = new File(forked, "run-" + run);
+			String[] names = a.list();
+			Arrays.sort(names);
+			assertTrue(names.length > 0);
+
+			for (String name : names)
+				assertArrayEquals("run " + run + " " + name, TestModels
+						.read(new File(a, name)), TestModels.read(new File(f,
+						name)));
+		}
+	}
+
+	/*
+	 * Makes runs saving them to files under out, and returns the directory
+	 * of the simulation
+	 */
+	private static File save(List<Map<String, Object>> runs, boolean fork,
+			File out) throws IOException {
+		OutputSink sink = new FileSink(out.getPath());
+		sink.open(new ModelParameters(runs.get(0)));
+
+		List<BatchExecutor.Result> results = new BatchExecutor(1, fork).run(
+				runs, sink);
+		assertEquals(runs.size(), results.size());
+		for (BatchExecutor.Result r : results)
+			assertTrue(r.output.getRows() > 0);
+		sink.close();
+
+		File[] sims = out.listFiles();
+		for (File sim : sims) {
+			if (sim.getName().startsWith("sim-"))
+				return sim;
+		}
+		throw new AssertionError("No simulation saved to " + out);
+	}
+
+}
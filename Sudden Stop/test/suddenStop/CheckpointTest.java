@@ -0,0 +1,194 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointTest {
+
+	private static final double SAVED_TICK = 20;
+
+	private File dir;
+	private File checkpoint;
+
+	@Before
+	public void saveCheckpoint() throws IOException {
+		dir = TestModels.tempDir("checkpoint");
+		checkpoint = new File(dir, "run.ckpt");
+
+		Simulation s = new Simulation(params());
+		s.runUntil(SAVED_TICK);
+		Checkpoint.save(s, checkpoint);
+		s.end();
+	}
+
+	@After
+	public void deleteDir() {
+		TestModels.delete(dir);
+	}
+
+	private static ModelParameters params(Object... namesAndValues)
+			throws IOException {
+		Object[] values = new Object[namesAndValues.length + 4];
+		values[0] = "randomSeed";
+		values[1] = 11;
+		values[2] = "suddenStopMagnitude";
+		values[3] = 0.5;
+		System.arraycopy(namesAndValues, 0, values, 4, namesAndValues.length);
+		return TestModels.params(values);
+	}
+
+	@Test
+	public void restoredRunGoesOnAsTheRunSaved() throws IOException {
+		Simulation whole = new Simulation(params());
+		whole.runUntil(SAVED_TICK);
+
+		Simulation restored = Checkpoint.restore(checkpoint);
+		assertEquals(SAVED_TICK, restored.getTick(), 0.0);
+
+		while (!whole.isDone()) {
+			whole.step();
+			restored.step();
+
+			String at = "tick " + whole.getTick();
+			assertEquals(at, whole.getSupplyManager().getPrice(), restored
+					.getSupplyManager().getPrice(), 0.0);
+			assertArrayEquals(at, firms(whole), firms(restored));
+		}
+		assertTrue(restored.isDone());
+
+		whole.end();
+		restored.end();
+	}
+
+	@Test
+	public void sameRunGivesSameCheckpoint() throws IOException {
+		File again = new File(dir, "again.ckpt");
+		Simulation s = new Simulation(params());
+		s.runUntil(SAVED_TICK);
+		Checkpoint.save(s, again);
+		s.end();
+
+		assertArrayEquals(TestModels.read(checkpoint), TestModels
+				.read(again));
+	}
+
+	@Test
+	public void savingAgainReplacesTheCheckpoint() throws IOException {
+		Simulation s = Checkpoint.restore(checkpoint);
+		s.step();
+		Checkpoint.save(s, checkpoint);
+		s.end();
+
+		Simulation restored = Checkpoint.restore(checkpoint);
+		assertEquals(SAVED_TICK + 1, restored.getTick(), 0.0);
+		restored.end();
+		assertFalse(new File(checkpoint.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void restoredCheckpointSavesTheSame() throws IOException {
+		File again = new File(dir, "again.ckpt");
+		Simulation s = Checkpoint.restore(checkpoint);
+		Checkpoint.save(s, again);
+		s.end();
+
+		assertArrayEquals(TestModels.read(checkpoint), TestModels
+				.read(again));
+	}
+
+	@Test
+	public void shockNotStartedCanChange() throws IOException {
+		Simulation s = Checkpoint.restore(checkpoint, params(
+				"suddenStopMagnitude", 0.8, "suddenStopDuration", 2.0,
+				"stopAt", 60.0, "workerThreads", 2));
+		s.run();
+		assertEquals(60, s.getTick(), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void otherSeedIsRejected() throws IOException {
+		Checkpoint.restore(checkpoint, params("randomSeed", 12));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void otherPeriodsAreRejected() throws IOException {
+		Checkpoint.restore(checkpoint, params("periods", 4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void otherDistributionIsRejected() throws IOException {
+		Checkpoint.restore(checkpoint, params("firstUnitCostMean", 2.5));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void startedShockCantChange() throws IOException {
+		Checkpoint.restore(checkpoint, params("suddenStopStart", 10));
+	}
+
+	@Test(expected = IOException.class)
+	public void unknownVersionIsRejected() throws IOException {
+		byte[] bytes = TestModels.read(checkpoint);
+		bytes[7] = 99;
+		FileOutputStream out = new FileOutputStream(checkpoint);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+
+		Checkpoint.restore(checkpoint);
+	}
+
+	@Test
+	public void restoredRunSavesTheTicksAfterTheCheckpoint()
+			throws IOException {
+		ModelParameters p = params();
+		OutputSink sink = new FileSink(new File(dir, "output").getPath());
+		sink.open(p);
+
+		Simulation s = Checkpoint.restore(checkpoint, p, sink, 1);
+		s.run();
+
+		File runDir = null;
+		for (File sim : new File(dir, "output").listFiles()) {
+			if (sim.getName().startsWith("sim-"))
+				runDir = new File(sim, "run-1");
+		}
+
+		BufferedReader r = new BufferedReader(new FileReader(new File(runDir,
+				"MarketData.tsv")));
+		try {
+			r.readLine();
+			String first = r.readLine();
+			int rows = 1;
+			while (r.readLine() != null)
+				rows++;
+
+			assertEquals(String.valueOf(SAVED_TICK + 1),
+					first.split("\t")[2]);
+			assertEquals(p.stopAt * p.periods - SAVED_TICK, rows, 0.0);
+		} finally {
+			r.close();
+		}
+	}
+
+	private static byte[] firms(Simulation s) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (Firm f : s.getSupplyManager().firms())
+			f.writeTo(out);
+		return bytes.toByteArray();
+	}
+
+}
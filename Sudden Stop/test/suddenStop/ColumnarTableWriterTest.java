@@ -0,0 +1,58 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ColumnarTableWriterTest {
+
+	// Enough rows for several segments
+	private static final int ROWS = 100000;
+
+	private File dir;
+
+	@Before
+	public void createDir() throws IOException {
+		dir = TestModels.tempDir("table");
+	}
+
+	@After
+	public void deleteDir() {
+		TestModels.delete(dir);
+	}
+
+	@Test
+	public void columnsAreTrimmedAndReadBack() throws IOException {
+		ColumnarTableWriter w = new ColumnarTableWriter(dir, new String[] {
+				"Firm", "Capital" }, new ColumnarTableWriter.Type[] {
+				ColumnarTableWriter.Type.LONG,
+				ColumnarTableWriter.Type.DOUBLE });
+		for (int r = 0; r < ROWS; r++) {
+			w.putLong(0, (1L << 40) + r);
+			w.putDouble(1, r / 4.0);
+		}
+		w.close();
+
+		assertEquals(8L * ROWS, new File(dir, ColumnarTableWriter
+				.fileName("Firm")).length());
+		assertEquals(8L * ROWS, new File(dir, ColumnarTableWriter
+				.fileName("Capital")).length());
+
+		ColumnarTable t = ColumnarTable.open(dir);
+		assertEquals(ROWS, t.rows());
+		LongBuffer firms = t.longs("Firm");
+		DoubleBuffer capital = t.doubles("Capital");
+		for (int r = 0; r < ROWS; r++) {
+			assertEquals((1L << 40) + r, firms.get(r));
+			assertEquals(r / 4.0, capital.get(r), 0.0);
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class DataCollectorTest {
+
+	/*
+	 * Keeps the rows per firm of every tick, and the firms born and exited
+	 */
+	private static class Rows implements RunOutput {
+
+		TreeMap<Double, List<String>> firms =
+				new TreeMap<Double, List<String>>();
+		TreeMap<Double, Set<Long>> events = new TreeMap<Double, Set<Long>>();
+
+		public void writeTick(TickRecord r) {
+			int columns = r.columns.length;
+			List<String> rows = new ArrayList<String>();
+			for (int i = 0; i < r.firms; i++)
+				rows.add(r.firmIDs[i]
+						+ Arrays.toString(Arrays.copyOfRange(r.firmData, i
+								* columns, (i + 1) * columns)));
+			firms.put(r.tick, rows);
+
+			Set<Long> ids = new HashSet<Long>();
+			for (int i = 0; i < r.newFirms; i++)
+				ids.add(r.newFirmIDs[i]);
+			for (int i = 0; i < r.exits; i++)
+				ids.add(r.exitFirmIDs[i]);
+			events.put(r.tick, ids);
+		}
+
+		public void close() {
+		}
+
+	}
+
+	private static Rows run(ModelParameters p) throws IOException {
+		Rows rows = new Rows();
+		Simulation s = new Simulation(p, rows, 1);
+		s.run();
+		return rows;
+	}
+
+	@Test
+	public void sampledTicksMatchTheFullOutput() throws IOException {
+		ModelParameters sampled = TestModels.params("randomSeed", 5,
+				"suddenStopMagnitude", 0.5, "firmSampleInterval", 5,
+				"firmSampleWindow", 1.0);
+		Rows full = run(TestModels.params("randomSeed", 5,
+				"suddenStopMagnitude", 0.5));
+		Rows some = run(sampled);
+
+		assertEquals(full.firms.keySet(), some.firms.keySet());
+		int checked = 0;
+		for (double tick : full.firms.keySet()) {
+			String at = "tick " + tick;
+			if (((long) tick) % sampled.firmSampleInterval == 0
+					|| (tick >= sampled.firmSampleFromTick
+							&& tick <= sampled.firmSampleToTick)) {
+				assertEquals(at, full.firms.get(tick), some.firms.get(tick));
+				checked++;
+			} else {
+				// Only the firms born or exited keep a row
+				for (String row : some.firms.get(tick)) {
+					long firm = Long.parseLong(row.substring(0, row
+							.indexOf('[')));
+					assertTrue(at + " firm " + firm, some.events.get(tick)
+							.contains(firm));
+				}
+			}
+		}
+		assertTrue(checked > 0);
+	}
+
+}
@@ -0,0 +1,63 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class FirmTest {
+
+	/*
+	 * A firm of a run after its first step, with its current state
+	 * producing quantity from acumQ on
+	 */
+	private static Firm firm(double acumQ, double quantity,
+			Object... namesAndValues) throws IOException {
+		Simulation s = new Simulation(TestModels.params(namesAndValues));
+		s.step();
+		Firm f = s.getSupplyManager().firms().iterator().next();
+		s.end();
+
+		f.currentState.acumQ = acumQ;
+		f.currentState.setQuantityPerPeriod(quantity);
+		return f;
+	}
+
+	private static double fixedCost(Firm f) {
+		ModelParameters p = f.supplyManager.params;
+		return f.currentState.getMinVarCost()
+				+ (p.wACCPerPeriod + p.depreciationPerPeriod)
+				/ f.currentState.getCapitalProductivityPerPeriod();
+	}
+
+	@Test
+	public void marginalCostFollowsTheLearningCurve() throws IOException {
+		Firm f = firm(40.0, 8.0, "randomSeed", 1);
+		FirmState st = f.currentState;
+
+		double expected = st.getFirstUnitCost() * (1.0 + st.getLRExpon())
+				* Math.pow(48.0, st.getLRExpon()) + fixedCost(f);
+		assertEquals(expected, f.getMarginalCost(), 1e-12 * expected);
+	}
+
+	@Test
+	public void marginalCostBeforeProducingIsInfinite() throws IOException {
+		Firm f = firm(0.0, 0.0, "randomSeed", 1);
+
+		assertTrue(f.currentState.getLRExpon() < 0);
+		assertEquals(Double.POSITIVE_INFINITY, f.getMarginalCost(), 0.0);
+	}
+
+	@Test
+	public void marginalCostWithoutLearningIsFirstUnitCost()
+			throws IOException {
+		Firm f = firm(0.0, 0.0, "randomSeed", 1, "learningRateMin", 1.0,
+				"learningRateMax", 1.0);
+
+		double expected = f.currentState.getFirstUnitCost() + fixedCost(f);
+		assertEquals(0.0, f.currentState.getLRExpon(), 0.0);
+		assertEquals(expected, f.getMarginalCost(), 1e-12 * expected);
+	}
+
+}
@@ -0,0 +1,35 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class IndustryTotalsTest {
+
+	@Test
+	public void totalsMatchTheFirms() throws IOException {
+		Simulation s = new Simulation(TestModels.params("randomSeed", 7));
+
+		while (!s.isDone()) {
+			s.step();
+
+			SupplyManager sm = s.getSupplyManager();
+			double capital = 0;
+			int firms = 0;
+			for (Firm f : sm.firms()) {
+				capital += f.getCapital();
+				firms++;
+			}
+
+			assertEquals("firms at tick " + s.getTick(), firms, sm
+					.getTotalFirms(), 0.0);
+			assertEquals("capital at tick " + s.getTick(), capital, sm
+					.getTotalCapital(), 1e-9 * Math.abs(capital));
+		}
+
+		s.end();
+	}
+
+}
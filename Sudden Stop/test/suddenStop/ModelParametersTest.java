@@ -0,0 +1,60 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ModelParametersTest {
+
+	private static final String[] ADDED = { "workerThreads",
+			"outputQueueCapacity", "sqlBatchSize", "outputSink",
+			"outputDirectory", "firmColumns", "aggregateOnly", "sketchColumns",
+			"sketchK", "firmSampleInterval", "firmSampleWindow",
+			"firmTrajectories" };
+
+	@Test
+	public void olderFilesGetTheDefaults() throws IOException {
+		Map<String, Object> values = TestModels.values();
+		for (String name : ADDED)
+			values.remove(name);
+
+		ModelParameters p = new ModelParameters(values);
+
+		assertEquals(1, p.workerThreads);
+		assertEquals(64, p.outputQueueCapacity);
+		assertEquals(1000, p.sqlBatchSize);
+		assertFalse(p.aggregateOnly);
+		assertEquals(QuantileSketch.DEFAULT_K, p.sketchK);
+		assertEquals(1, p.firmSampleInterval);
+		assertEquals(p.suddenStopStartTick, p.firmSampleFromTick, 0.0);
+		assertFalse(p.firmTrajectories);
+	}
+
+	@Test
+	public void missingParameterIsNamed() throws IOException {
+		Map<String, Object> values = TestModels.values();
+		values.remove("entrantsMean");
+
+		try {
+			new ModelParameters(values);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("entrantsMean"));
+		}
+	}
+
+	@Test
+	public void wrongTypeIsNamed() throws IOException {
+		try {
+			TestModels.params("workerThreads", "many");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage()
+					.contains("workerThreads"));
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ParameterSetTest {
+
+	private static String hash(Object... namesAndValues) throws IOException {
+		return ParameterSet.of(TestModels.params(namesAndValues)).hash;
+	}
+
+	@Test
+	public void howRunsAreMadeAndSavedIsNotHashed() throws IOException {
+		assertEquals(hash(), hash("workerThreads", 8, "sqlBatchSize", 50,
+				"outputQueueCapacity", 4, "outputSink", OutputSinks.COLUMNAR,
+				"outputDirectory", "elsewhere", "firmColumns", "full",
+				"aggregateOnly", true, "sketchColumns", "Capital", "sketchK",
+				100, "firmSampleInterval", 5, "firmSampleWindow", 2.0,
+				"firmTrajectories", true, "simDescription", "Other",
+				"SQLServer", "db.example.org", "database", "Other"));
+	}
+
+	@Test
+	public void runParametersAreNotHashed() throws IOException {
+		assertEquals(hash(), hash("randomSeed", 5, "suddenStopMagnitude",
+				0.4, "suddenStopStart", 12));
+	}
+
+	@Test
+	public void modelParametersAreHashed() throws IOException {
+		assertFalse(hash().equals(hash("entrantsMean", 11.0)));
+		assertFalse(hash().equals(hash("suddenStopDuration", 2.0)));
+		assertFalse(hash().equals(hash("periods", 4)));
+	}
+
+	@Test
+	public void numbersHashTheSameWhateverTheirType() throws IOException {
+		assertEquals(hash("entrantsMean", 12.0), hash("entrantsMean", 12));
+		assertEquals(hash("entrantsMean", 12.0), hash("entrantsMean", 12L));
+		assertEquals(hash("demandShift", 0.25), hash("demandShift", 0.25f));
+		assertEquals(hash("demandShift", 0.1), hash("demandShift", 0.1f));
+	}
+
+	@Test
+	public void sameParametersGiveSameCanonicalForm() throws IOException {
+		ParameterSet a = ParameterSet.of(TestModels.params());
+		ParameterSet b = ParameterSet.of(TestModels.params());
+
+		assertEquals(a.canonical(), b.canonical());
+		assertEquals(64, a.hash.length());
+		assertFalse(a.values().containsKey("randomSeed"));
+		assertFalse(a.values().containsKey("workerThreads"));
+		assertTrue(a.values().containsKey("entrantsMean"));
+	}
+
+}
@@ -0,0 +1,106 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+
+	private static final double[] QUARTILES = { 0.25, 0.5, 0.75 };
+
+	private static QuantileSketch sketch(long seed, int n) {
+		QuantileSketch s = new QuantileSketch();
+		fill(s, seed, n);
+		return s;
+	}
+
+	private static void fill(QuantileSketch s, long seed, int n) {
+		Random random = new Random(seed);
+		for (int i = 0; i < n; i++)
+			s.update(random.nextGaussian());
+	}
+
+	@Test
+	public void clearedSketchMatchesNewOne() {
+		QuantileSketch reused = sketch(1, 1000000);
+		reused.clear();
+		fill(reused, 2, 5000);
+
+		QuantileSketch fresh = sketch(2, 5000);
+
+		assertArrayEquals(fresh.toBytes(), reused.toBytes());
+		assertArrayEquals(fresh.quantiles(QUARTILES), reused
+				.quantiles(QUARTILES), 0.0);
+	}
+
+	@Test
+	public void sameValuesGiveSameSketch() {
+		assertArrayEquals(sketch(3, 100000).toBytes(), sketch(3, 100000)
+				.toBytes());
+	}
+
+	@Test
+	public void roundTripsThroughBytes() throws IOException {
+		QuantileSketch s = sketch(4, 50000);
+		QuantileSketch read = QuantileSketch.fromBytes(s.toBytes());
+
+		assertEquals(s.count(), read.count());
+		assertEquals(s.min(), read.min(), 0.0);
+		assertEquals(s.max(), read.max(), 0.0);
+		assertArrayEquals(s.toBytes(), read.toBytes());
+		assertArrayEquals(s.quantiles(SketchFile.QUANTILES), read
+				.quantiles(SketchFile.QUANTILES), 0.0);
+	}
+
+	@Test
+	public void quantilesAreWithinRankError() {
+		int n = 200000;
+		double[] values = new double[n];
+		Random random = new Random(5);
+		QuantileSketch s = new QuantileSketch();
+		for (int i = 0; i < n; i++) {
+			values[i] = random.nextGaussian();
+			s.update(values[i]);
+		}
+		Arrays.sort(values);
+
+		for (double q : new double[] { 0.01, 0.1, 0.25, 0.5, 0.75, 0.9,
+				0.99 }) {
+			int rank = Arrays.binarySearch(values, s.quantile(q));
+			assertTrue("rank of quantile " + q,
+					Math.abs(rank - q * n) < 0.02 * n);
+		}
+
+		assertEquals(values[0], s.quantile(0), 0.0);
+		assertEquals(values[n - 1], s.quantile(1), 0.0);
+	}
+
+	@Test
+	public void mergeCountsEveryValue() {
+		QuantileSketch a = sketch(6, 30000);
+		QuantileSketch b = sketch(7, 70000);
+		a.merge(b);
+
+		assertEquals(100000, a.count());
+		assertEquals(0.0, a.quantile(0.5), 0.05);
+	}
+
+	@Test
+	public void emptySketchHasNoQuantiles() {
+		QuantileSketch s = new QuantileSketch();
+		s.update(Double.NaN);
+
+		assertTrue(s.isEmpty());
+		assertTrue(Double.isNaN(s.quantile(0.5)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sketchesOfDifferentKDoNotMerge() {
+		new QuantileSketch(100).merge(new QuantileSketch(200));
+	}
+
+}
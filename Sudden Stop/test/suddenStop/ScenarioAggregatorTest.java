@@ -0,0 +1,81 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ScenarioAggregatorTest {
+
+	@Test
+	public void runsMadeOrSavedOtherwiseShareTheScenario() throws IOException {
+		List<Map<String, Object>> runs = new ArrayList<Map<String, Object>>();
+		runs.add(TestModels.values("randomSeed", 1));
+		runs.add(TestModels.values("randomSeed", 2, "workerThreads", 4));
+		runs.add(TestModels.values("randomSeed", 3, "outputSink",
+				OutputSinks.COLUMNAR, "firmSampleInterval", 10));
+		runs.add(TestModels.values("randomSeed", 1, "suddenStopMagnitude",
+				0.5));
+
+		List<ScenarioAggregator.Scenario> scenarios = new ScenarioAggregator(
+				runs).scenarios();
+
+		assertEquals(2, scenarios.size());
+		assertEquals(3, scenarios.get(0).expectedRuns);
+		assertEquals(1, scenarios.get(1).expectedRuns);
+	}
+
+	@Test
+	public void seedsAreAveraged() throws IOException {
+		List<Map<String, Object>> runs = new ArrayList<Map<String, Object>>();
+		for (int seed = 1; seed <= 3; seed++)
+			runs.add(TestModels.values("randomSeed", seed));
+
+		ScenarioAggregator aggregator = new ScenarioAggregator(runs);
+		MarketSeries[] series = new MarketSeries[runs.size()];
+		for (int r = 0; r < series.length; r++) {
+			Simulation s = new Simulation(new ModelParameters(runs.get(r)));
+			s.run();
+			series[r] = s.getSeries();
+			aggregator.add(s.getParams(), series[r]);
+		}
+
+		ScenarioAggregator.Scenario scenario = aggregator.scenarios().get(0);
+		assertTrue(scenario.isDone());
+
+		for (int tick = 1; tick <= scenario.ticks(); tick++) {
+			for (int v = 0; v < MarketSeries.SERIES; v++) {
+				double sum = 0;
+				for (MarketSeries s : series)
+					sum += s.get(v, tick);
+				double mean = sum / series.length;
+
+				double squares = 0;
+				for (MarketSeries s : series)
+					squares += (s.get(v, tick) - mean)
+							* (s.get(v, tick) - mean);
+
+				String at = MarketSeries.NAMES[v] + " at tick " + tick;
+				assertEquals(at, 3, scenario.count(tick));
+				assertEquals(at, mean, scenario.mean(v, tick),
+						1e-9 * Math.abs(mean));
+				assertEquals(at, squares / 2, scenario.variance(v, tick),
+						1e-9 * Math.max(1, squares));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void runsOutOfTheSweepAreRejected() throws IOException {
+		List<Map<String, Object>> runs = new ArrayList<Map<String, Object>>();
+		runs.add(TestModels.values("randomSeed", 1));
+
+		new ScenarioAggregator(runs).add(TestModels.params("entrantsMean",
+				20.0), new MarketSeries(1));
+	}
+
+}
@@ -0,0 +1,61 @@
+package suddenStop;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/*
+ * Parameters for the tests: the defaults of parameters.xml with some values
+ * changed. Tests run from the project directory.
+ */
+class TestModels {
+
+	static final File PARAMETERS = new File("suddenStop.rs/parameters.xml");
+
+	static Map<String, Object> values(Object... namesAndValues)
+			throws IOException {
+		Map<String, Object> values = ParameterFile.readDefaults(PARAMETERS);
+		for (int i = 0; i < namesAndValues.length; i += 2)
+			values.put((String) namesAndValues[i], namesAndValues[i + 1]);
+		return values;
+	}
+
+	static ModelParameters params(Object... namesAndValues)
+			throws IOException {
+		return new ModelParameters(values(namesAndValues));
+	}
+
+	static File tempDir(String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, "");
+		if (!dir.delete() || !dir.mkdir())
+			throw new IOException("Could not create " + dir);
+		return dir;
+	}
+
+	static void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null) {
+			for (File c : files)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	static byte[] read(File f) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(f);
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				bytes.write(buffer, 0, n);
+		} finally {
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,78 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class TickAggregatesTest {
+
+	private static final FirmColumn[] COLUMNS = { FirmColumn.CAPITAL,
+			FirmColumn.PROFIT, FirmColumn.QUANTITY };
+
+	private static TickAggregates aggregate(Simulation s) {
+		TickAggregates a = new TickAggregates(COLUMNS, s.getParams());
+		for (Firm f : s.getSupplyManager().firms())
+			a.addFirm(f);
+		return a;
+	}
+
+	@Test
+	public void allBucketMatchesTheFirms() throws IOException {
+		Simulation s = new Simulation(TestModels.params("randomSeed", 3));
+		s.runUntil(30);
+		TickAggregates a = aggregate(s);
+
+		int n = 0;
+		double[] sum = new double[COLUMNS.length];
+		for (Firm f : s.getSupplyManager().firms()) {
+			n++;
+			for (int c = 0; c < COLUMNS.length; c++)
+				sum[c] += COLUMNS[c].get(f);
+		}
+
+		assertEquals(n, a.firms[0]);
+		for (int c = 0; c < COLUMNS.length; c++) {
+			double mean = sum[c] / n;
+			double squares = 0;
+			for (Firm f : s.getSupplyManager().firms())
+				squares += (COLUMNS[c].get(f) - mean)
+						* (COLUMNS[c].get(f) - mean);
+
+			String column = COLUMNS[c].columnName;
+			assertEquals(column, sum[c], a.sum[c], 1e-9 * Math.abs(sum[c]));
+			assertEquals(column, mean, a.mean(0, c), 1e-9 * Math.abs(mean));
+			assertEquals(column, squares / n, a.variance(0, c), 1e-9
+					* squares / n);
+		}
+		s.end();
+	}
+
+	@Test
+	public void cohortsSplitEveryFirm() throws IOException {
+		Simulation s = new Simulation(TestModels.params("randomSeed", 3));
+		s.runUntil(30);
+		TickAggregates a = aggregate(s);
+		s.end();
+
+		int lev = 0;
+		for (int b = 1; b <= TickAggregates.LEV_COHORTS; b++)
+			lev += a.firms[b];
+		int tim = 0;
+		for (int b = TickAggregates.LEV_COHORTS + 1; b < a.buckets; b++)
+			tim += a.firms[b];
+
+		assertEquals(a.firms[0], lev);
+		assertEquals(a.firms[0], tim);
+	}
+
+	@Test
+	public void emptyBucketHasNoMean() throws IOException {
+		TickAggregates a = new TickAggregates(COLUMNS, TestModels.params());
+
+		assertTrue(Double.isNaN(a.mean(0, 0)));
+		assertTrue(Double.isNaN(a.variance(0, 0)));
+	}
+
+}
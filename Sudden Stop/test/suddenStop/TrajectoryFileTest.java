@@ -0,0 +1,185 @@
+package suddenStop;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrajectoryFileTest {
+
+	private static final FirmColumn[] COLUMNS = { FirmColumn.CAPITAL,
+			FirmColumn.PROFIT, FirmColumn.QUANTITY };
+
+	// Steady ticks and every size of change of the delta
+	private static final long[] GAPS = { 1, 1, 1, 1, 2, 40, 200, 1500, 90000 };
+
+	private static final long EXITING = 3;
+	private static final long LATE = 1L << 40;
+
+	private File dir;
+
+	// The rows written per firm, tick first
+	private Map<Long, List<double[]>> written;
+
+	@Before
+	public void createDir() throws IOException {
+		dir = TestModels.tempDir("trajectories");
+	}
+
+	@After
+	public void deleteDir() {
+		TestModels.delete(dir);
+	}
+
+	/*
+	 * A run of firms 1 to 5, with firm EXITING leaving halfway and firm LATE
+	 * entering then. Values stay, drift, jump or are special
+	 */
+	private File write(File runDir) throws IOException {
+		written = new HashMap<Long, List<double[]>>();
+		Random rnd = new Random(5);
+		TickRecord r = new TickRecord(COLUMNS);
+		TrajectoryFile file = new TrajectoryFile(runDir, COLUMNS);
+
+		long tick = 3;
+		for (int t = 0; t < 400; t++) {
+			r.clear();
+			r.tick = tick;
+			for (long firm = 1; firm <= 5; firm++) {
+				if (firm != EXITING || t <= 200)
+					addRow(r, firm, t, rnd);
+			}
+			if (t == 200) {
+				r.exitFirmIDs[0] = EXITING;
+				r.exitCauses[0] = ExitCause.PERFORMANCE;
+				r.exits = 1;
+			}
+			if (t >= 200)
+				addRow(r, LATE, t, rnd);
+
+			file.write(r);
+			tick += GAPS[rnd.nextInt(GAPS.length)];
+		}
+		file.close();
+
+		return new File(runDir, TrajectoryFile.NAME);
+	}
+
+	private void addRow(TickRecord r, long firm, int t, Random rnd) {
+		double[] row = { r.tick, 1000.0 + firm, firm * Math.sin(t / 10.0),
+				rnd.nextGaussian() };
+		if (t % 37 == 0)
+			row[3] = Double.NaN;
+		else if (t % 41 == 0)
+			row[3] = -0.0;
+		else if (t % 43 == 0)
+			row[2] = Double.NEGATIVE_INFINITY;
+
+		int i = r.firms;
+		r.firmIDs[i] = firm;
+		System.arraycopy(row, 1, r.firmData, i * COLUMNS.length,
+				COLUMNS.length);
+		r.firms++;
+
+		List<double[]> rows = written.get(firm);
+		if (rows == null) {
+			rows = new ArrayList<double[]>();
+			written.put(firm, rows);
+		}
+		rows.add(row);
+	}
+
+	/*
+	 * The rows of d per firm, tick first
+	 */
+	private static Map<Long, List<double[]>> decode(TrajectoryDecoder d)
+			throws IOException {
+		Map<Long, List<double[]>> rows = new HashMap<Long, List<double[]>>();
+		try {
+			while (d.next()) {
+				double[] row = new double[COLUMNS.length + 1];
+				row[0] = d.tick();
+				for (int c = 0; c < COLUMNS.length; c++)
+					row[c + 1] = d.value(c);
+
+				List<double[]> firm = rows.get(d.firm());
+				if (firm == null) {
+					firm = new ArrayList<double[]>();
+					rows.put(d.firm(), firm);
+				}
+				firm.add(row);
+			}
+		} finally {
+			d.close();
+		}
+		return rows;
+	}
+
+	private static void assertSameRows(String firm, List<double[]> expected,
+			List<double[]> actual) {
+		assertEquals(firm, expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertArrayEquals(firm + " row " + i, bits(expected.get(i)),
+					bits(actual.get(i)));
+	}
+
+	private static long[] bits(double[] row) {
+		long[] bits = new long[row.length];
+		for (int i = 0; i < row.length; i++)
+			bits[i] = Double.doubleToRawLongBits(row[i]);
+		return bits;
+	}
+
+	@Test
+	public void scanDecodesEveryRow() throws IOException {
+		File f = write(dir);
+
+		TrajectoryDecoder d = TrajectoryFile.scan(f);
+		assertEquals(Arrays.asList("Capital", "Profit", "Quantity"), d
+				.columns());
+		Map<Long, List<double[]>> rows = decode(d);
+
+		assertEquals(written.keySet(), rows.keySet());
+		for (Long firm : written.keySet())
+			assertSameRows("firm " + firm, written.get(firm), rows.get(firm));
+	}
+
+	@Test
+	public void readDecodesTheRowsOfAFirm() throws IOException {
+		File f = write(dir);
+
+		for (Long firm : written.keySet()) {
+			Map<Long, List<double[]>> rows = decode(TrajectoryFile.read(f,
+					firm));
+			assertEquals(1, rows.size());
+			assertSameRows("firm " + firm, written.get(firm), rows.get(firm));
+		}
+		assertTrue(decode(TrajectoryFile.read(f, 6)).isEmpty());
+	}
+
+	@Test
+	public void sameRowsGiveSameFile() throws IOException {
+		File other = new File(dir, "other");
+		assertTrue(other.mkdir());
+
+		byte[] first = TestModels.read(write(dir));
+		byte[] second = TestModels.read(write(other));
+		assertArrayEquals(first, second);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void ticksMustBeWhole() {
+		new TrajectoryEncoder(1).add(1.5, new double[] { 0.0 }, 0);
+	}
+
+}